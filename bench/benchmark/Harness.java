@@ -0,0 +1,373 @@
+package benchmark;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintStream;
+import java.io.Writer;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
+
+/**
+ * A small benchmark harness in the style of JMH's average-time mode, for
+ * a tree that has no build tool to pull JMH in with.
+ *
+ * Each benchmark is set up once for every combination of its parameters.
+ * Its operation is then run for a warm-up period and for a number of
+ * measurement iterations of fixed length, and the average time per
+ * operation of each iteration is recorded. Results are printed as a
+ * table and can be written as JSON in the layout JMH uses for
+ * -rf json (benchmark, params, mode, primaryMetric with score, scoreError,
+ * scoreUnit and rawData), so runs can be compared with the usual tools.
+ * scoreError is the half-width of a 99.9% confidence interval, as in JMH.
+ *
+ * As in JMH, each benchmark runs for each combination of its parameters
+ * in a fresh JVM (a fork), so the profile that earlier benchmarks leave
+ * in the JIT does not skew it. The fork runs the main class given to the
+ * constructor with the options -f, -p, -wi, -i, -r, -forks 0 and -child,
+ * which that main class has to pass on to this harness, and reports its
+ * measurements on a line of standard output that starts with "@result".
+ * The clock is read only at the start and the end of an iteration: a
+ * timer thread raises a flag that the loop polls, so the 20 ns or so that
+ * System.nanoTime() takes is not added to every operation.
+ *
+ * Results are not comparable with JMH runs, only with other runs of this
+ * harness: each operation also pays for the identity hash of its result
+ * (see sink), which is cheap but not free, where JMH's Blackhole costs
+ * about a nanosecond, and nothing here guards against the other pitfalls
+ * that JMH handles, such as constant folding of inputs the JIT can see.
+ */
+public class Harness {
+
+    // One benchmark, set up for one combination of parameters.
+    public interface Setup {
+        Operation setup(Map<String, String> params) throws Exception;
+    }
+
+    // The operation that is timed. Its result is consumed, so the work
+    // that produced it cannot be optimized away.
+    public interface Operation {
+        Object run() throws Exception;
+    }
+
+    private static class Benchmark {
+        final String name;
+        final Map<String, String[]> params;
+        final Setup setup;
+
+        Benchmark(String name, Map<String, String[]> params, Setup setup) {
+            this.name = name;
+            this.params = params;
+            this.setup = setup;
+        }
+    }
+
+    private static class Result {
+        final String name;
+        final Map<String, String> params;
+        final double[][] rawData;  // nanoseconds per op, by fork and iteration
+        final double[] nanosPerOp; // the same, all forks together
+
+        Result(String name, Map<String, String> params, double[][] rawData) {
+            this.name = name;
+            this.params = params;
+            this.rawData = rawData;
+            int n = 0;
+            for (double[] fork : rawData) n += fork.length;
+            nanosPerOp = new double[n];
+            n = 0;
+            for (double[] fork : rawData) {
+                System.arraycopy(fork, 0, nanosPerOp, n, fork.length);
+                n += fork.length;
+            }
+        }
+
+        double mean() {
+            double sum = 0;
+            for (double x : nanosPerOp) sum += x;
+            return sum / nanosPerOp.length;
+        }
+
+        double error() {
+            int n = nanosPerOp.length;
+            if (n < 2) return Double.NaN;
+            double mean = mean(), squares = 0;
+            for (double x : nanosPerOp) squares += (x - mean) * (x - mean);
+            return studentT999(n - 1) * Math.sqrt(squares / (n - 1) / n);
+        }
+    }
+
+    private final List<Benchmark> benchmarks = new ArrayList<>();
+    private final List<Result> results = new ArrayList<>();
+
+    // settings, see main-style options in InventoryBenchmarks
+    private long warmupMillis = 1000;
+    private long iterationMillis = 1000;
+    private int iterations = 5;
+    private int forks = 1;
+    private boolean child;
+    private Pattern filter = Pattern.compile(".*");
+    private final Map<String, String[]> overrides = new LinkedHashMap<>();
+
+    // the class whose main method runs a fork
+    private final Class<?> mainClass;
+
+    // set by the timer when the current iteration is over
+    private volatile boolean done;
+    private static final ScheduledExecutorService TIMER =
+            Executors.newSingleThreadScheduledExecutor(task -> {
+                Thread thread = new Thread(task, "harness-timer");
+                thread.setDaemon(true);
+                return thread;
+            });
+
+    // The identity hash of every operation result is folded into a sum
+    // that is stored here after each iteration. A result the JIT can see
+    // is freshly allocated would otherwise be dropped by escape analysis,
+    // with the work that made it; taking its identity hash needs the
+    // object itself, so it cannot be.
+    private volatile int sink;
+
+    // constructor: forks run the main method of mainClass
+    public Harness(Class<?> mainClass) {
+        this.mainClass = mainClass;
+    }
+
+    public void add(String name, Map<String, String[]> params, Setup setup) {
+        benchmarks.add(new Benchmark(name, params, setup));
+    }
+
+    public void setWarmupMillis(long millis) {
+        warmupMillis = millis;
+    }
+
+    public void setIterationMillis(long millis) {
+        iterationMillis = millis;
+    }
+
+    public void setIterations(int n) {
+        iterations = n;
+    }
+
+    // number of JVMs to measure each benchmark and parameter combination
+    // in, one after the other; 0 measures everything in this JVM
+    public void setForks(int n) {
+        forks = n;
+    }
+
+    // run as a fork: print each result as an "@result" line for the
+    // parent instead of as a table
+    public void setChild(boolean child) {
+        this.child = child;
+    }
+
+    // run only the benchmarks whose names contain a match of regex
+    public void setFilter(String regex) {
+        filter = Pattern.compile(regex);
+    }
+
+    // replace the values of a parameter in every benchmark that has it
+    public void override(String param, String[] values) {
+        overrides.put(param, values);
+    }
+
+    // Run the selected benchmarks, printing one line per result to out.
+    public void run(PrintStream out) throws Exception {
+        if (!child) {
+            out.printf("%-40s %-40s %14s %12s%n", "Benchmark", "Params",
+                       "Score", "Error");
+        }
+        for (Benchmark b : benchmarks) {
+            if (!filter.matcher(b.name).find()) continue;
+
+            Map<String, String[]> space = new LinkedHashMap<>(b.params);
+            for (Map.Entry<String, String[]> o : overrides.entrySet()) {
+                if (space.containsKey(o.getKey())) space.put(o.getKey(), o.getValue());
+            }
+            for (Map<String, String> params : combinations(space)) {
+                Result r = forks > 0 ? fork(b, params) : measure(b, params);
+                results.add(r);
+                if (child) {
+                    StringBuilder line = new StringBuilder("@result");
+                    for (int i = 0; i < r.nanosPerOp.length; i++) {
+                        line.append(i == 0 ? ' ' : ',').append(r.nanosPerOp[i]);
+                    }
+                    out.println(line);
+                } else {
+                    out.printf("%-40s %-40s %14.1f %12.1f  ns/op%n", r.name,
+                               params, r.mean(), r.error());
+                }
+                out.flush();
+            }
+        }
+    }
+
+    private Result measure(Benchmark b, Map<String, String> params)
+            throws Exception {
+        Operation op = b.setup.setup(params);
+        runFor(op, warmupMillis);
+
+        double[] nanosPerOp = new double[iterations];
+        for (int i = 0; i < iterations; i++) {
+            nanosPerOp[i] = runFor(op, iterationMillis);
+        }
+        return new Result(b.name, params, new double[][] { nanosPerOp });
+    }
+
+    // run op until about millis milliseconds have passed; returns
+    // nanoseconds per op
+    private double runFor(Operation op, long millis) throws Exception {
+        done = false;
+        TIMER.schedule(() -> { done = true; }, millis, TimeUnit.MILLISECONDS);
+        long ops = 0;
+        int hashes = 0;
+        long start = System.nanoTime();
+        do {
+            hashes += System.identityHashCode(op.run());
+            ops++;
+        } while (!done);
+        long end = System.nanoTime();
+        sink += hashes;
+        return (double) (end - start) / ops;
+    }
+
+    // Measure a benchmark with one combination of parameters in forks new
+    // JVMs, one at a time, with the same JVM options and class path as
+    // this one.
+    private Result fork(Benchmark b, Map<String, String> params) throws Exception {
+        List<String> command = new ArrayList<>();
+        command.add(Paths.get(System.getProperty("java.home"), "bin", "java").toString());
+        command.addAll(ManagementFactory.getRuntimeMXBean().getInputArguments());
+        command.add("-cp");
+        command.add(System.getProperty("java.class.path"));
+        command.add(mainClass.getName());
+        command.add("-f");
+        command.add("^" + Pattern.quote(b.name) + "$");
+        for (Map.Entry<String, String> p : params.entrySet()) {
+            command.add("-p");
+            command.add(p.getKey() + "=" + p.getValue());
+        }
+        command.add("-wi");
+        command.add(String.valueOf(warmupMillis));
+        command.add("-i");
+        command.add(String.valueOf(iterations));
+        command.add("-r");
+        command.add(String.valueOf(iterationMillis));
+        command.add("-forks");
+        command.add("0");
+        command.add("-child");
+
+        double[][] rawData = new double[forks][];
+        for (int f = 0; f < forks; f++) {
+            Process process = new ProcessBuilder(command)
+                    .redirectError(ProcessBuilder.Redirect.INHERIT)
+                    .start();
+            try (BufferedReader in = new BufferedReader(new InputStreamReader(
+                    process.getInputStream(), StandardCharsets.UTF_8))) {
+                String line;
+                while ((line = in.readLine()) != null) {
+                    if (line.startsWith("@result ")) {
+                        String[] values = line.substring(8).split(",");
+                        rawData[f] = new double[values.length];
+                        for (int i = 0; i < values.length; i++) {
+                            rawData[f][i] = Double.parseDouble(values[i]);
+                        }
+                    }
+                }
+            }
+            if (process.waitFor() != 0 || rawData[f] == null) {
+                throw new IOException("fork " + (f + 1) + " of " + b.name + " " +
+                                      params + " failed");
+            }
+        }
+        return new Result(b.name, params, rawData);
+    }
+
+    private static List<Map<String, String>> combinations(Map<String, String[]> space) {
+        List<Map<String, String>> all = new ArrayList<>();
+        all.add(new LinkedHashMap<>());
+        for (Map.Entry<String, String[]> p : space.entrySet()) {
+            List<Map<String, String>> next = new ArrayList<>();
+            for (Map<String, String> partial : all) {
+                for (String value : p.getValue()) {
+                    Map<String, String> m = new LinkedHashMap<>(partial);
+                    m.put(p.getKey(), value);
+                    next.add(m);
+                }
+            }
+            all = next;
+        }
+        return all;
+    }
+
+    // Write the results as a JSON array in JMH's result layout.
+    public void writeJson(Path file) throws IOException {
+        try (Writer w = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+            w.write("[\n");
+            for (int i = 0; i < results.size(); i++) {
+                Result r = results.get(i);
+                w.write("  {\n");
+                w.write("    \"benchmark\": " + quote("benchmark." + r.name) + ",\n");
+                w.write("    \"mode\": \"avgt\",\n");
+                w.write("    \"forks\": " + r.rawData.length + ",\n");
+                w.write("    \"measurementIterations\": " + r.rawData[0].length + ",\n");
+                w.write("    \"measurementTime\": \"" + iterationMillis + " ms\",\n");
+                w.write("    \"warmupTime\": \"" + warmupMillis + " ms\",\n");
+                w.write("    \"params\": {");
+                boolean first = true;
+                for (Map.Entry<String, String> p : r.params.entrySet()) {
+                    w.write((first ? " " : ", ") + quote(p.getKey()) + ": " + quote(p.getValue()));
+                    first = false;
+                }
+                w.write(" },\n");
+                w.write("    \"primaryMetric\": {\n");
+                w.write("      \"score\": " + number(r.mean()) + ",\n");
+                w.write("      \"scoreError\": " + number(r.error()) + ",\n");
+                w.write("      \"scoreUnit\": \"ns/op\",\n");
+                w.write("      \"rawData\": [");
+                for (int f = 0; f < r.rawData.length; f++) {
+                    w.write(f > 0 ? ", [" : "[");
+                    for (int j = 0; j < r.rawData[f].length; j++) {
+                        w.write((j > 0 ? ", " : "") + number(r.rawData[f][j]));
+                    }
+                    w.write("]");
+                }
+                w.write("]\n");
+                w.write("    }\n");
+                w.write(i < results.size() - 1 ? "  },\n" : "  }\n");
+            }
+            w.write("]\n");
+        }
+    }
+
+    private static String quote(String s) {
+        return "\"" + s.replace("\\", "\\\\").replace("\"", "\\\"") + "\"";
+    }
+
+    private static String number(double x) {
+        return Double.isNaN(x) ? "\"NaN\"" : String.valueOf(x);
+    }
+
+    // two-sided 99.9% quantile of Student's t distribution
+    private static double studentT999(int degrees) {
+        final double[] table = { 636.62, 31.599, 12.924, 8.610, 6.869,
+                                 5.959, 5.408, 5.041, 4.781, 4.587,
+                                 4.437, 4.318, 4.221, 4.140, 4.073,
+                                 4.015, 3.965, 3.922, 3.883, 3.850 };
+        if (degrees <= table.length) return table[degrees - 1];
+        if (degrees <= 30) return 3.646;
+        if (degrees <= 60) return 3.460;
+        return 3.291;
+    }
+}
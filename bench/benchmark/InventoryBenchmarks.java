@@ -0,0 +1,345 @@
+package benchmark;
+
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Random;
+
+import inventory.*;
+import list.*;
+import sortedList.*;
+
+/**
+ * Benchmarks for the list, sortedList and inventory packages.
+ *
+ * Usage: java -cp bin benchmark.InventoryBenchmarks [options]
+ *   -f regex        run only the benchmarks whose names match
+ *   -p name=v1,v2   use these values for a parameter
+ *   -wi millis      warm-up time per benchmark (default 1000)
+ *   -i count        measurement iterations (default 5)
+ *   -r millis       time per measurement iteration (default 1000)
+ *   -forks count    JVMs to measure each benchmark and parameter
+ *                   combination in (default 1; 0 runs all in this one)
+ *   -json file      also write the results as JSON
+ *
+ * Parameters: size (titles or list items), customers, waiting (people on
+ * each waiting list) and impl (skip, array or linked sorted list).
+ */
+public class InventoryBenchmarks {
+
+    private static final String[] SIZES = { "1000", "10000", "100000", "1000000" };
+    private static final String[] IMPLS = { "skip", "array", "linked" };
+
+    private static final PrintStream NOWHERE =
+            new PrintStream(OutputStream.nullOutputStream());
+
+    public static void main(String[] args) throws Exception {
+        Harness harness = new Harness(InventoryBenchmarks.class);
+        Path json = null;
+
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "-f": harness.setFilter(args[++i]); break;
+                case "-wi": harness.setWarmupMillis(Long.parseLong(args[++i])); break;
+                case "-i": harness.setIterations(Integer.parseInt(args[++i])); break;
+                case "-r": harness.setIterationMillis(Long.parseLong(args[++i])); break;
+                case "-forks": harness.setForks(Integer.parseInt(args[++i])); break;
+                case "-child": harness.setChild(true); break;
+                case "-json": json = Paths.get(args[++i]); break;
+                case "-p": {
+                    String[] p = args[++i].split("=", 2);
+                    harness.override(p[0], p[1].split(","));
+                    break;
+                }
+                default:
+                    System.out.println("Unknown option: " + args[i]);
+                    return;
+            }
+        }
+
+        addListBenchmarks(harness);
+        addSortedListBenchmarks(harness);
+        addInventoryBenchmarks(harness);
+        harness.run(System.out);
+        if (json != null) {
+            harness.writeJson(json);
+        }
+    }
+
+    ///////
+    // list
+    ///////
+
+    private static void addListBenchmarks(Harness h) {
+        // get at random positions: a walk from the head or the cursor
+        h.add("list.getRandom", params("size", SIZES), p -> {
+            int n = Integer.parseInt(p.get("size"));
+            ListReferenceBased list = linkedList(n);
+            Random random = new Random(1);
+            return () -> list.get(1 + random.nextInt(n));
+        });
+
+        // get at consecutive positions, which the cursor makes O(1)
+        h.add("list.getSequential", params("size", SIZES), p -> {
+            int n = Integer.parseInt(p.get("size"));
+            ListReferenceBased list = linkedList(n);
+            int[] next = { 0 };
+            return () -> {
+                next[0] = next[0] % n + 1;
+                return list.get(next[0]);
+            };
+        });
+    }
+
+    /////////////
+    // sortedList
+    /////////////
+
+    private static void addSortedListBenchmarks(Harness h) {
+        h.add("sortedList.locateIndex", params("impl", IMPLS, "size", SIZES), p -> {
+            int n = Integer.parseInt(p.get("size"));
+            SortedListInterface list = sortedList(p.get("impl"), n);
+            Random random = new Random(1);
+            return () -> list.locateIndex(key(random.nextInt(n)));
+        });
+
+        // add a new item and remove it again, so the size stays the same
+        h.add("sortedList.addRemove", params("impl", IMPLS, "size", SIZES), p -> {
+            int n = Integer.parseInt(p.get("size"));
+            SortedListInterface list = sortedList(p.get("impl"), n);
+            Random random = new Random(1);
+            return () -> {
+                String item = key(random.nextInt(n)) + "+";
+                list.sortedAdd(item);
+                list.sortedRemove(item);
+                return item;
+            };
+        });
+    }
+
+    ////////////
+    // inventory
+    ////////////
+
+    private static void addInventoryBenchmarks(Harness h) {
+        h.add("inventory.findStockItem", params("size", SIZES), p -> {
+            int n = Integer.parseInt(p.get("size"));
+            Inventory inventory = inventory(n, 0, 0);
+            Random random = new Random(1);
+            return () -> inventory.findStockItem(title(random.nextInt(n)));
+        });
+
+        // the 10 titles that share a prefix, read from the sorted order
+        h.add("inventory.titlesWithPrefix", params("size", SIZES), p -> {
+            int n = Integer.parseInt(p.get("size"));
+            Inventory inventory = inventory(n, 0, 0);
+            Random random = new Random(1);
+            return () -> {
+                String title = title(random.nextInt(n));
+                Iterator<StockItem> matches =
+                        inventory.titlesWithPrefix(title.substring(0, title.length() - 1));
+                int count = 0;
+                while (matches.hasNext()) {
+                    matches.next();
+                    count++;
+                }
+                return count;
+            };
+        });
+
+        // the 10 titles spelled most like a misspelled one; the trigram
+        // index is built during setup
+        h.add("inventory.findSimilarTitles", params("size", SIZES), p -> {
+            int n = Integer.parseInt(p.get("size"));
+            Inventory inventory = inventory(n, 0, 0);
+            inventory.findSimilarTitles("", 1, 0);
+            Random random = new Random(1);
+            return () -> inventory.findSimilarTitles(
+                    "Tilte " + key(random.nextInt(n)), 10, 0);
+        });
+
+        // insert a new title and delete it again
+        h.add("inventory.insertDelete", params("size", SIZES), p -> {
+            int n = Integer.parseInt(p.get("size"));
+            Inventory inventory = inventory(n, 0, 0);
+            Random random = new Random(1);
+            return () -> {
+                StockItem item = new StockItem(title(random.nextInt(n)) + "+");
+                inventory.insertStockItem(item);
+                inventory.deleteStockItem(item);
+                return item;
+            };
+        });
+
+        // load a CSV file of titles in random order into an empty inventory
+        h.add("inventory.importCsv", params("size", SIZES), p -> {
+            int n = Integer.parseInt(p.get("size"));
+            Path file = Files.createTempFile("inventory", ".csv");
+            file.toFile().deleteOnExit();
+            int[] order = new int[n];
+            for (int i = 0; i < n; i++) order[i] = i;
+            Random random = new Random(1);
+            StringBuilder csv = new StringBuilder();
+            for (int i = n - 1; i >= 0; i--) {
+                int j = random.nextInt(i + 1);
+                int t = order[j];
+                order[j] = order[i];
+                csv.append(title(t)).append(",2,1\n");
+            }
+            Files.writeString(file, csv);
+            return () -> new Inventory().importCsv(file);
+        });
+
+        // write every title, waiting list and customer to a file
+        h.add("inventory.exportInventory",
+              params("size", SIZES, "waiting", new String[] { "0", "4" },
+                     "format", new String[] { "CSV", "JSON_LINES" }), p -> {
+            Inventory inventory = inventory(Integer.parseInt(p.get("size")), 1000,
+                                            Integer.parseInt(p.get("waiting")));
+            ExportFormat format = ExportFormat.valueOf(p.get("format"));
+            Path file = Files.createTempFile("inventory", ".export");
+            file.toFile().deleteOnExit();
+            return () -> inventory.exportInventory(file, format);
+        });
+
+        // add a new customer and delete them again
+        h.add("inventory.addToCustomerList",
+              params("customers", new String[] { "1000", "100000" }), p -> {
+            int customers = Integer.parseInt(p.get("customers"));
+            Inventory inventory = inventory(0, customers, 0);
+            Random random = new Random(1);
+            return () -> {
+                Person person = new Person("New", "Customer" + random.nextInt(customers));
+                inventory.addToCustomerList(person);
+                inventory.deleteFromCustomerList(person, NOWHERE);
+                return person;
+            };
+        });
+
+        // visit every title
+        h.add("inventory.scan", params("size", SIZES), p -> {
+            int n = Integer.parseInt(p.get("size"));
+            Inventory inventory = inventory(n, 0, 0);
+            return () -> {
+                long total = 0;
+                for (Object dataItem : inventory) {
+                    total += ((StockItem) dataItem).getHave();
+                }
+                return total;
+            };
+        });
+
+        // render the L listing
+        h.add("inventory.listInventory",
+              params("size", SIZES, "waiting", new String[] { "0", "4" }), p -> {
+            int n = Integer.parseInt(p.get("size"));
+            Inventory inventory = inventory(n, 0, Integer.parseInt(p.get("waiting")));
+            return () -> {
+                inventory.listInventory(NOWHERE);
+                return inventory;
+            };
+        });
+
+        // raise the want value of 100 titles, then run the purchase order;
+        // every title starts balanced, and the order balances the 100
+        // again, so each order is for those titles only
+        h.add("inventory.purchaseOrder", params("size", SIZES), p -> {
+            int n = Integer.parseInt(p.get("size"));
+            Inventory inventory = inventory(n, 0, 0);
+            inventory.purchaseOrder();
+            Random random = new Random(1);
+            return () -> {
+                for (int i = 0; i < 100; i++) {
+                    StockItem item = inventory.findStockItem(title(random.nextInt(n)));
+                    inventory.setWant(item, item.getHave() + 1);
+                }
+                return inventory.purchaseOrder();
+            };
+        });
+
+        // save to a data file and restore from it
+        h.add("inventory.snapshotRoundTrip",
+              params("size", SIZES, "customers", new String[] { "1000" },
+                     "waiting", new String[] { "0", "4" }), p -> {
+            Inventory inventory = inventory(Integer.parseInt(p.get("size")),
+                                            Integer.parseInt(p.get("customers")),
+                                            Integer.parseInt(p.get("waiting")));
+            Path file = Files.createTempFile("inventory", ".dat");
+            file.toFile().deleteOnExit();
+            return () -> {
+                inventory.saveInventory(file);
+                return inventory.restoreInventory(file);
+            };
+        });
+    }
+
+    ///////////
+    // Fixtures
+    ///////////
+
+    private static Map<String, String[]> params(Object... namesAndValues) {
+        Map<String, String[]> params = new LinkedHashMap<>();
+        for (int i = 0; i < namesAndValues.length; i += 2) {
+            params.put((String) namesAndValues[i], (String[]) namesAndValues[i + 1]);
+        }
+        return params;
+    }
+
+    // keys and titles sort in the order of their numbers
+    private static String key(int i) {
+        return String.format("%08d", i);
+    }
+
+    private static String title(int i) {
+        return "Title " + key(i);
+    }
+
+    private static ListReferenceBased linkedList(int n) {
+        ListReferenceBased list = new ListReferenceBased();
+        for (int i = 1; i <= n; i++) {
+            list.add(i, key(i));
+        }
+        return list;
+    }
+
+    private static SortedListInterface newSortedList(String impl) {
+        switch (impl) {
+            case "skip": return new SortedSkipList();
+            case "array": return new SortedArrayList();
+            case "linked": return new SortedList();
+            default: throw new IllegalArgumentException("impl: " + impl);
+        }
+    }
+
+    private static SortedListInterface sortedList(String impl, int n) {
+        SortedListInterface list = newSortedList(impl);
+        for (int i = 0; i < n; i++) {
+            list.sortedAppend(key(i));
+        }
+        return list;
+    }
+
+    // n titles, each with have 1, want 2 and waiting people on its
+    // waiting list, and the given number of customers
+    private static Inventory inventory(int n, int customers, int waiting) {
+        Inventory inventory = new Inventory();
+        for (int i = 0; i < n; i++) {
+            StockItem item = new StockItem(title(i));
+            item.setHave(1);
+            item.setWant(2);
+            for (int j = 0; j < waiting; j++) {
+                item.getWaitingList().addLast(new Person("First" + j, "Last" + i));
+            }
+            inventory.sortedAppend(item);
+        }
+        for (int i = 0; i < customers; i++) {
+            inventory.addToCustomerList(new Person("First", "Customer" + key(i)));
+        }
+        return inventory;
+    }
+}
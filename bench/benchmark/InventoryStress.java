@@ -0,0 +1,258 @@
+package benchmark;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import inventory.*;
+
+/**
+ * Stress test for the locking in Inventory. Many threads sell, deliver
+ * and restock (setHave) a few titles at once, so every title is worked on
+ * by several threads, and the titles share stripe locks. Afterwards every
+ * title must balance:
+ *   have = first have + restocked - sold - delivered
+ *   waiting list = the people put on it, less the people delivered to,
+ * with nobody delivered to twice or lost, and the deficit and surplus sets
+ * must hold exactly the titles that reclassify would put in them (see
+ * Inventory.checkIndexes). Before the threads start, a title is deleted
+ * and every operation that changes a title is called with a reference to
+ * it held from before: each must refuse with TitleRemovedException and
+ * leave the title out of the deficit and surplus sets. Any violation is
+ * printed and the exit status is 1.
+ *
+ * Usage: java -cp bin benchmark.InventoryStress [options]
+ *   -t threads      threads (default 8)
+ *   -n count        operations per thread (default 200000)
+ *   -titles count   titles the threads share (default 16)
+ *   -columnar       keep have and want values in columns
+ *
+ * setHave sets an absolute value, so to know how many copies it added
+ * the driver runs it under a lock of its own on the title, which sells
+ * and deliveries of that title share with each other: they still race
+ * each other freely, and setHave races every other title in its stripe.
+ */
+public class InventoryStress {
+
+    private static final int WANT = 5;
+    private static final int FIRST_HAVE = WANT;
+    private static final int NAMES = 1000;
+
+    // what the threads did to one title
+    private static class Ledger {
+        final ReentrantReadWriteLock restock = new ReentrantReadWriteLock();
+        final LongAdder sold = new LongAdder();
+        final LongAdder delivered = new LongAdder();
+        final LongAdder restocked = new LongAdder();
+        // the people put on the waiting list and not yet delivered to
+        final Set<Person> waiting = ConcurrentHashMap.newKeySet();
+    }
+
+    public static void main(String[] args) throws Exception {
+        int threads = 8;
+        int ops = 200000;
+        int titles = 16;
+        boolean columnar = false;
+
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "-t": threads = Integer.parseInt(args[++i]); break;
+                case "-n": ops = Integer.parseInt(args[++i]); break;
+                case "-titles": titles = Integer.parseInt(args[++i]); break;
+                case "-columnar": columnar = true; break;
+                default:
+                    System.out.println("Unknown option: " + args[i]);
+                    System.exit(2);
+            }
+        }
+
+        Inventory inventory = new Inventory(columnar);
+        StockItem[] items = new StockItem[titles];
+        Ledger[] ledgers = new Ledger[titles];
+        for (int i = 0; i < titles; i++) {
+            items[i] = new StockItem("Stress " + i);
+            items[i].setHave(FIRST_HAVE);
+            items[i].setWant(WANT);
+            inventory.insertStockItem(items[i]);
+            ledgers[i] = new Ledger();
+        }
+
+        List<String> problems = new ArrayList<>();
+        checkRemovedTitle(inventory, problems);
+
+        Set<String> errors = ConcurrentHashMap.newKeySet();
+        CountDownLatch start = new CountDownLatch(1);
+        Thread[] workers = new Thread[threads];
+        for (int t = 0; t < threads; t++) {
+            int seed = t;
+            int count = ops;
+            workers[t] = new Thread(() -> {
+                try {
+                    start.await();
+                    work(inventory, items, ledgers, new Random(seed), count, errors);
+                } catch (Throwable e) {
+                    errors.add(Thread.currentThread().getName() + ": " + e);
+                }
+            }, "stress-" + t);
+            workers[t].start();
+        }
+
+        long begin = System.nanoTime();
+        start.countDown();
+        for (Thread worker : workers) {
+            worker.join();
+        }
+        double seconds = (System.nanoTime() - begin) / 1e9;
+        problems.addAll(errors);
+
+        for (int i = 0; i < titles; i++) {
+            check(items[i], ledgers[i], problems);
+        }
+        problems.addAll(inventory.checkIndexes());
+
+        long total = (long) threads * ops;
+        System.out.printf("%d operations on %d titles by %d threads%s in %.3f s " +
+                          "(%.0f ops/s)%n", total, titles, threads,
+                          columnar ? " (columnar)" : "", seconds, total / seconds);
+        if (problems.isEmpty()) {
+            System.out.println("OK: every title balances and the deficit and " +
+                               "surplus sets are consistent");
+            return;
+        }
+        for (String problem : problems) {
+            System.out.println("FAILED: " + problem);
+        }
+        System.exit(1);
+    }
+
+    // one thread's share: half sells, a third deliveries, the rest restocks
+    private static void work(Inventory inventory, StockItem[] items,
+                             Ledger[] ledgers, Random random, int ops,
+                             Set<String> errors) {
+        String last = Thread.currentThread().getName();
+        for (int n = 0; n < ops; n++) {
+            int i = random.nextInt(items.length);
+            StockItem item = items[i];
+            Ledger ledger = ledgers[i];
+            int op = random.nextInt(6);
+
+            if (op < 3) {
+                Person person = new Person("First" + random.nextInt(NAMES), last);
+                ledger.restock.readLock().lock();
+                try {
+                    // put on the ledger first: a delivery may take the
+                    // person off the waiting list before sell returns
+                    ledger.waiting.add(person);
+                    if (inventory.sellStockItem(item, person)) {
+                        ledger.waiting.remove(person);
+                        ledger.sold.increment();
+                    }
+                } finally {
+                    ledger.restock.readLock().unlock();
+                }
+            } else if (op < 5) {
+                ledger.restock.readLock().lock();
+                try {
+                    Object[] people = inventory.deliverStockItem(item);
+                    for (Object person : people) {
+                        if (!ledger.waiting.remove(person)) {
+                            errors.add("\"" + item.getTitle() + "\": " + person +
+                                       " was delivered to but was not waiting");
+                        }
+                    }
+                    ledger.delivered.add(people.length);
+                } finally {
+                    ledger.restock.readLock().unlock();
+                }
+            } else {
+                ledger.restock.writeLock().lock();
+                try {
+                    int have = random.nextInt(2 * WANT + 1);
+                    ledger.restocked.add(have - item.getHave());
+                    inventory.setHave(item, have);
+                } finally {
+                    ledger.restock.writeLock().unlock();
+                }
+            }
+        }
+    }
+
+    // Delete a title, then change it through the reference looked up
+    // before, as a session does when another one deletes the title while
+    // it prompts for a name. Every title balances at this point, so the
+    // orders must be empty.
+    private static void checkRemovedTitle(Inventory inventory, List<String> problems) {
+        StockItem item = new StockItem("Stress removed");
+        item.setHave(1);
+        item.setWant(1);
+        inventory.insertStockItem(item);
+        StockItem held = inventory.findStockItem(item.getTitle());
+        inventory.deleteStockItem(held);
+
+        Person person = new Person("Stale", "Reference");
+        Map<String, Runnable> changes = new LinkedHashMap<>();
+        changes.put("setHave", () -> inventory.setHave(held, 0));
+        changes.put("setWant", () -> inventory.setWant(held, 5));
+        changes.put("sellStockItem", () -> inventory.sellStockItem(held, person));
+        changes.put("deliverStockItem", () -> inventory.deliverStockItem(held));
+        changes.put("drainWaitingList", () -> inventory.drainWaitingList(held, 1));
+        for (Map.Entry<String, Runnable> change : changes.entrySet()) {
+            try {
+                change.getValue().run();
+                problems.add(change.getKey() + " changed a deleted title");
+            } catch (TitleRemovedException e) {
+                // refused, as it should be
+            }
+        }
+
+        if (held.getHave() != 1 || held.getWant() != 1 ||
+                held.getWaitingList().size() != 0) {
+            problems.add("a deleted title was changed: " + held);
+        }
+        for (OrderLine line : inventory.purchaseOrder()) {
+            problems.add("purchase order for \"" + line.getTitle() + "\" x" +
+                         line.getQuantity() + " with every title balanced");
+        }
+        for (OrderLine line : inventory.returnOrder()) {
+            problems.add("return order for \"" + line.getTitle() + "\" x" +
+                         line.getQuantity() + " with every title balanced");
+        }
+        problems.addAll(inventory.checkIndexes());
+    }
+
+    // check that a title balances against its ledger
+    private static void check(StockItem item, Ledger ledger, List<String> problems) {
+        String title = "\"" + item.getTitle() + "\": ";
+        long expected = FIRST_HAVE + ledger.restocked.sum() - ledger.sold.sum() -
+                        ledger.delivered.sum();
+        if (item.getHave() < 0) {
+            problems.add(title + "have is " + item.getHave());
+        }
+        if (item.getHave() != expected) {
+            problems.add(title + "have is " + item.getHave() + ", expected " +
+                         expected + " (" + FIRST_HAVE + " + " +
+                         ledger.restocked.sum() + " restocked - " +
+                         ledger.sold.sum() + " sold - " +
+                         ledger.delivered.sum() + " delivered)");
+        }
+
+        WaitingList waitingList = item.getWaitingList();
+        if (waitingList.size() != ledger.waiting.size()) {
+            problems.add(title + waitingList.size() + " on the waiting list, " +
+                         "expected " + ledger.waiting.size());
+        }
+        for (Object person : waitingList) {
+            if (!ledger.waiting.contains(person)) {
+                problems.add(title + person + " is on the waiting list but " +
+                             "was never put there, or was delivered to");
+            }
+        }
+    }
+}
@@ -1,26 +1,164 @@
 
+import java.io.BufferedOutputStream;
 import java.io.BufferedReader;
+import java.io.EOFException;
+import java.io.FileDescriptor;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStreamReader;
-import java.util.StringTokenizer;
+import java.io.PrintStream;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
 
 import inventory.*;
 import list.ListException;
+import metrics.LatencyHistogram;
+import metrics.Metrics;
 
 public class InventoryApp {
-    private Inventory inventory = new Inventory();
+    // Journal of changes since the last save; see inventory.Journal. The
+    // sync policy, flush interval and checkpoint size can be set with the
+    // system properties inventory.journal.sync (ALWAYS, BATCH or NEVER),
+    // inventory.journal.flushMillis and inventory.journal.checkpoint.
+    private static final Path JOURNAL_FILE = Paths.get("inventory.journal");
+    private static final String JOURNAL_SYNC =
+            System.getProperty("inventory.journal.sync", "BATCH");
+    private static final long JOURNAL_FLUSH_MILLIS =
+            Long.getLong("inventory.journal.flushMillis", 100);
+    private static final int JOURNAL_CHECKPOINT =
+            Integer.getInteger("inventory.journal.checkpoint", 10000);
+
+    // Checkpoint size in batch mode, where saving as often as in a session
+    // would cost more than the commands; set with the system property
+    // inventory.batch.checkpoint. Whether one is due is checked every
+    // BATCH_CHECKPOINT_INTERVAL commands.
+    private static final int BATCH_CHECKPOINT =
+            Integer.getInteger("inventory.batch.checkpoint", 1000000);
+    private static final int BATCH_CHECKPOINT_INTERVAL = 1024;
+
+    // Data file, and whether to restore it lazily: waiting lists are then
+    // read on first use and by a background thread, so the first prompt
+    // appears once the titles are in (see Inventory.restoreInventory(Path,
+    // boolean)). Turn off with the system property inventory.lazyRestore=false.
+    private static final Path DATA_FILE = Paths.get("inventory.dat");
+    private static final boolean LAZY_RESTORE =
+            !"false".equalsIgnoreCase(System.getProperty("inventory.lazyRestore"));
+
+    // Keep have and want values in int columns (see Inventory(boolean));
+    // set with the system property inventory.columnar=true.
+    private static final boolean COLUMNAR = Boolean.getBoolean("inventory.columnar");
+
+    // Threads used to work out purchase and return orders (see OrderEngine);
+    // set with the system property inventory.orders.parallelism. With 1,
+    // orders are worked out on the calling thread.
+    private static final int ORDER_PARALLELISM = Integer.getInteger(
+            "inventory.orders.parallelism", Runtime.getRuntime().availableProcessors());
+    private static final OrderEngine ORDER_ENGINE =
+            ORDER_PARALLELISM > 1 ? new OrderEngine(ORDER_PARALLELISM) : null;
+
+    // size of the input and output buffers in batch mode
+    private static final int BATCH_BUFFER = 1 << 16;
+
+    // number of titles listed by F, and of the titles suggested when a
+    // title is not found, with the similarity a suggestion needs (see
+    // Inventory.findSimilarTitles)
+    private static final int SIMILAR_TITLES = 10;
+    private static final int SUGGESTIONS = 3;
+    private static final double SUGGESTION_SIMILARITY = 0.4;
+
+    // number of rejected rows U prints; the rest are only counted
+    private static final int REJECTIONS_SHOWN = 20;
+
+    // the commands whose latencies are recorded when metrics are on
+    // (system property inventory.metrics=true; see metrics.Metrics)
+    private static final String TIMED_COMMANDS = "HLPBFIAMDORSCXYZUE";
+
+    // their histograms, by letter from 'A'; looked up once, and null for
+    // the other letters and when metrics are off
+    private static final LatencyHistogram[] COMMAND_LATENCY = new LatencyHistogram[26];
+    static {
+        if (Metrics.ENABLED) {
+            for (char command : TIMED_COMMANDS.toCharArray()) {
+                COMMAND_LATENCY[command - 'A'] = Metrics.histogram("command." + command);
+            }
+        }
+    }
+
+    private Inventory inventory;
     private String nextLine;
-    private BufferedReader stdin = new BufferedReader(
-                           new InputStreamReader(System.in));
+    private final BufferedReader stdin;
+    private final PrintStream out;
+
+    // In batch mode each line holds a command and the answers to its
+    // prompts, separated by '|'; readInput takes the next answer from
+    // batchLine, starting at batchPos (-1 when there are none left).
+    private boolean batch;
+    private String batchLine;
+    private int batchPos;
+
+    // time spent waiting for input during the current command, which is
+    // left out of its latency
+    private long inputNanos;
+
+    // the exports started by E that may still be running, each followed by
+    // the printing of its outcome
+    private CompletableFuture<?> exports = CompletableFuture.completedFuture(null);
+
+    // constructor: an interactive session on the console
+    public InventoryApp() {
+        this(new Inventory(), new BufferedReader(new InputStreamReader(System.in)),
+             System.out);
+    }
 
-    // Read user input
+    // constructor: a session on a (possibly shared) inventory that reads
+    // commands from in and prints the results to out
+    public InventoryApp(Inventory inventory, BufferedReader in, PrintStream out) {
+        this.inventory = inventory;
+        this.stdin = in;
+        this.out = out;
+    }
+
+    // Read user input. The output is flushed first, so the prompt is seen
+    // before the session blocks. Throws UncheckedIOException when the input
+    // is closed or cannot be read, which ends the session.
     private void readInput(String prompt) {
-        System.out.print(prompt);
+        if (batch) {
+            nextLine = nextField();
+            return;
+        }
+        out.print(prompt);
+        out.flush();
+        long start = Metrics.ENABLED ? System.nanoTime() : 0;
         try {
             nextLine = stdin.readLine();
         } catch (IOException e) {
-            e.printStackTrace();
+            throw new UncheckedIOException(e);
         }
+        if (Metrics.ENABLED) inputNanos += System.nanoTime() - start;
+        if (nextLine == null)
+            throw new UncheckedIOException(new EOFException("End of input"));
+    }
+
+    // Take the next '|'-separated field of the batch line. Throws
+    // IllegalArgumentException if the line has no more fields.
+    private String nextField() {
+        if (batchPos < 0)
+            throw new IllegalArgumentException("missing field");
+
+        String field;
+        int end = batchLine.indexOf('|', batchPos);
+        if (end < 0) {
+            field = batchLine.substring(batchPos);
+            batchPos = -1;
+        } else {
+            field = batchLine.substring(batchPos, end);
+            batchPos = end + 1;
+        }
+        return field;
     }
 
     // Display the inventory information for a specified title.
@@ -32,9 +170,45 @@ public class InventoryApp {
     private void displayVideoInfo(String title){
         StockItem stockItem = inventory.findStockItem(title);
         if (stockItem != null)
-            inventory.displayStockItemInfo(stockItem);
-        else
-            System.out.println("Stock item not found! (title: " + title + ")");
+            inventory.displayStockItemInfo(stockItem, out);
+        else {
+            out.println("Stock item not found! (title: " + title + ")");
+            suggestTitles(title);
+        }
+    }
+
+    // Suggest the titles closest to one that was not found, if any are
+    // close enough.
+    private void suggestTitles(String title) {
+        StockItem[] similar = inventory.findSimilarTitles(title, SUGGESTIONS,
+                                                          SUGGESTION_SIMILARITY);
+        if (similar.length == 0) return;
+
+        out.print("   Did you mean ");
+        for (int i = 0; i < similar.length; i++) {
+            if (i > 0) out.print(i == similar.length - 1 ? " or " : ", ");
+            out.print("\"" + similar[i].getTitle() + "\"");
+        }
+        out.println("?");
+    }
+
+    // List the titles closest to a (possibly misspelled) title.
+    // Preconditions: None.
+    // Postcondition: Up to SIMILAR_TITLES titles that share part of their
+    //                spelling with the given one are printed, most similar
+    //                first.
+    //
+    private void findSimilarTitles(String title) {
+        StockItem[] similar = inventory.findSimilarTitles(title, SIMILAR_TITLES, 0);
+        String heading = "Titles similar to \"" + title + "\"";
+
+        out.println();
+        out.println(heading);
+        out.println("=".repeat(heading.length()));
+        if (similar.length == 0) out.println("no titles found");
+        for (int i = 0; i < similar.length; i++) {
+            out.println("[" + (i + 1) + "] " + similar[i].getTitle());
+        }
     }
 
     // Add a new title to the inventory.
@@ -47,7 +221,7 @@ public class InventoryApp {
         StockItem stockItem = inventory.findStockItem(title);
 
         if (stockItem != null) {
-            System.out.println("-- Title already exists! Use M <title> " +
+            out.println("-- Title already exists! Use M <title> " +
                                "to modify want value.");
             return;
         } else stockItem = new StockItem(title);
@@ -58,16 +232,80 @@ public class InventoryApp {
         try {
             want = Integer.parseInt(nextLine);
         } catch (Exception e) {
-            System.out.println("** Invalid input: the initial want " +
+            out.println("** Invalid input: the initial want " +
                     "value is set to zero!");
             want = 0;
         }
         stockItem.setWant(want);
-        inventory.insertStockItem(stockItem);
-        System.out.println("-- A new title (" + title +
+        if (!inventory.insertNewStockItem(stockItem)) {
+            // another session added the title while we were asking
+            out.println("-- Title already exists! Use M <title> " +
+                               "to modify want value.");
+            return;
+        }
+        out.println("-- A new title (" + title +
              ") with the initial want value of " + want + " is added!");
     }
 
+    // Add the titles in a CSV file to the inventory.
+    // Preconditions: None.
+    // Postcondition: The titles in the file that are not yet in the
+    //                inventory are added with their want (and have) values,
+    //                and the rows that were rejected are printed with the
+    //                reason (see Inventory.importCsv).
+    //
+    private void importTitles(String file) {
+        ImportResult result;
+        try {
+            result = inventory.importCsv(Paths.get(file.trim()));
+        } catch (Exception e) {
+            out.println("** Import error: " + e);
+            return;
+        }
+
+        List<String> rejected = result.getRejected();
+        out.println("-- " + result.getImported() + " title(s) imported from \"" +
+                    file.trim() + "\"; " + rejected.size() + " row(s) rejected" +
+                    (rejected.isEmpty() ? "." : ":"));
+        for (int i = 0; i < rejected.size() && i < REJECTIONS_SHOWN; i++) {
+            out.println("   " + rejected.get(i));
+        }
+        if (rejected.size() > REJECTIONS_SHOWN) {
+            out.println("   ... and " + (rejected.size() - REJECTIONS_SHOWN) + " more");
+        }
+    }
+
+    // Export the inventory to a file in the background.
+    // Preconditions: None.
+    // Postcondition: The titles with their have and want values and waiting
+    //                lists, and the customers, as they are now, are being
+    //                written to the file: as CSV if its name ends in .csv,
+    //                and as JSON Lines otherwise (see Inventory.exportInventory).
+    //                The outcome is printed when the export is done.
+    //
+    private void exportInventory(String file) {
+        String name = file.trim();
+        ExportFormat format = name.toLowerCase().endsWith(".csv")
+                ? ExportFormat.CSV : ExportFormat.JSON_LINES;
+
+        CompletableFuture<Long> export =
+                inventory.exportInventoryAsync(Paths.get(name), format);
+        out.println("-- Exporting the inventory to \"" + name + "\" ...");
+        CompletableFuture<?> reported = export.handle((records, e) -> {
+            if (e != null)
+                out.println("** Export error: " + e);
+            else
+                out.println("-- Exported " + records + " record(s) to \"" + name + "\"");
+            return null;
+        });
+        exports = CompletableFuture.allOf(exports, reported);
+    }
+
+    // Wait for the exports started by E to finish and print their outcome.
+    void awaitExports() {
+        exports.join();
+    }
+
     // Modify the want value for a specified title.
     // Preconditions: None.
     // Postcondition: Prompt the user to input the want value for the specified
@@ -77,7 +315,7 @@ public class InventoryApp {
     private void modifyWantValue(String title) {
 
         // ==> 1. Add your code here!
-        // System.out.println("-- To be implemented!"); // comment this statement!
+        // out.println("-- To be implemented!"); // comment this statement!
 
         // Find the StockItem that the user is attempting to modify.
         StockItem item = inventory.findStockItem(title);
@@ -85,7 +323,7 @@ public class InventoryApp {
         // Ensure the title exists.
         if(item == null) {
             // Give the user an error message.
-            System.out.printf("Title \"%s\" cannot be found!\n", title);
+            out.printf("Title \"%s\" cannot be found!\n", title);
 
             // Exit the method without continuing.
             return;
@@ -103,17 +341,18 @@ public class InventoryApp {
             if(wantValue < 0) throw new NumberFormatException();
         } catch(NumberFormatException e) {
             // Give the user an error message since the input was not an valid want value.
-            System.out.printf("The inputted value of \"%s\" is not a valid want value!\n", nextLine);
+            out.printf("The inputted value of \"%s\" is not a valid want value!\n", nextLine);
 
             // Exit the method without continuing.
             return;
         }
 
-        // Inform the user about the change to the want value.
-        System.out.printf("\n-- The want value for stock item \"%s\" is changed from %d to %d.\n", title, item.getWant(), wantValue);
+        // Set the want value of the item, keeping the old one for the message.
+        int oldWant = item.getWant();
+        inventory.setWant(item, wantValue);
 
-        // Set the want value of the item.
-        item.setWant(wantValue);
+        // Inform the user about the change to the want value.
+        out.printf("\n-- The want value for stock item \"%s\" is changed from %d to %d.\n", title, oldWant, wantValue);
     }
 
     // Print out the purchase order for additional videos based on a comparison
@@ -127,51 +366,33 @@ public class InventoryApp {
     private void purchaseOrder() {
 
         // ==> 2. Add your code here!
-        // System.out.println("-- To be implemented!"); // comment this statement!
-
-        // Create a flag to store whether any orders have been placed.
-        boolean orderPlaced = false;
-
-        // Create a counter to store the line number of the purchase order.
-        int lineNum = 1;
-
-        // Loop through every title in the inventory list.
-        for(int i = 1; i <= inventory.size(); i++) {
-            // Store a reference to the item locally.
-            StockItem item = (StockItem) inventory.get(i);
-
-            // Store the want and have values of this item.
-            int wantValue = item.getWant();
-            int haveValue = item.getHave();
-
-            // Check if the want value is greater than the have value.
-            if(wantValue > haveValue) {
-                // Check if the orderPlaced flag is false, meaning that this is the first order to be placed.
-                if(!orderPlaced) {
-                    // Print out the purchase order title.
-                    System.out.println("");
-                    System.out.println("Purchase Order");
-                    System.out.println("==============");
-                }
-
-                // Set the orderPlaced flag to true.
-                orderPlaced = true;
-
-                // Print the order message.
-                System.out.printf("[%d] %d videos for stock item \"%s\" has been ordered.\n", lineNum, wantValue - haveValue, item.getTitle());
+        // out.println("-- To be implemented!"); // comment this statement!
+
+        // Bring every title that is short up to its want value, and get the
+        // order lines back in title order.
+        OrderLine[] lines = ORDER_ENGINE == null ? inventory.purchaseOrder()
+                                                 : inventory.purchaseOrder(ORDER_ENGINE);
+
+        // Check if any orders have been placed.
+        if(lines.length > 0) {
+            // Print out the purchase order title.
+            out.println("");
+            out.println("Purchase Order");
+            out.println("==============");
+        }
 
-                // Set the have value of this item to the want value.
-                item.setHave(wantValue);
+        // Print each order line, numbered from 1.
+        for(int lineNum = 1; lineNum <= lines.length; lineNum++) {
+            OrderLine line = lines[lineNum - 1];
 
-                // Increment the line counter by 1.
-                lineNum++;
-            }
+            // Print the order message.
+            out.printf("[%d] %d videos for stock item \"%s\" has been ordered.\n", lineNum, line.getQuantity(), line.getTitle());
         }
 
         // Check if there were no orders placed.
-        if(!orderPlaced) {
+        if(lines.length == 0) {
             // Print a message explaining that the purchase order is empty.
-            System.out.println("\nNo videos have been ordered.");
+            out.println("\nNo videos have been ordered.");
         }
 
     }
@@ -186,51 +407,33 @@ public class InventoryApp {
     private void returnOrder() {
 
         // ==> 3. Add your code here!
-        // System.out.println("-- To be implemented!"); // comment this statement!
-
-        // Create a flag to store whether any returns have been placed.
-        boolean returnsPlaced = false;
-
-        // Create a counter to store the line number of the return order.
-        int lineNum = 1;
-
-        // Loop through every title in the inventory list.
-        for(int i = 1; i <= inventory.size(); i++) {
-            // Store a reference to the item locally.
-            StockItem item = (StockItem) inventory.get(i);
-
-            // Store the want and have values of this item.
-            int wantValue = item.getWant();
-            int haveValue = item.getHave();
-
-            // Check if the have value is greater than the want value.
-            if(haveValue > wantValue) {
-                // Check if the returnsPlaced flag is false, meaning that this is the first return to be placed.
-                if(!returnsPlaced) {
-                    // Print out the return order title.
-                    System.out.println("");
-                    System.out.println("Return Order");
-                    System.out.println("============");
-                }
-
-                // Set the returnsPlaced flag to true.
-                returnsPlaced = true;
-
-                // Print the return order message.
-                System.out.printf("[%d] %d videos for stock item \"%s\" has been returned.\n", lineNum, haveValue - wantValue, item.getTitle());
+        // out.println("-- To be implemented!"); // comment this statement!
+
+        // Bring every title that is over stocked down to its want value, and
+        // get the return lines back in title order.
+        OrderLine[] lines = ORDER_ENGINE == null ? inventory.returnOrder()
+                                                 : inventory.returnOrder(ORDER_ENGINE);
+
+        // Check if any returns have been placed.
+        if(lines.length > 0) {
+            // Print out the return order title.
+            out.println("");
+            out.println("Return Order");
+            out.println("============");
+        }
 
-                // Set the have value of this item to the want value.
-                item.setHave(wantValue);
+        // Print each return line, numbered from 1.
+        for(int lineNum = 1; lineNum <= lines.length; lineNum++) {
+            OrderLine line = lines[lineNum - 1];
 
-                // Increment the line counter by 1.
-                lineNum++;
-            }
+            // Print the return order message.
+            out.printf("[%d] %d videos for stock item \"%s\" has been returned.\n", lineNum, line.getQuantity(), line.getTitle());
         }
 
         // Check if there were no returns placed.
-        if(!returnsPlaced) {
+        if(lines.length == 0) {
             // Print a message explaining that the return order is empty.
-            System.out.println("\nNo videos have been returned.");
+            out.println("\nNo videos have been returned.");
         }
     }
 
@@ -244,7 +447,7 @@ public class InventoryApp {
     private void sellVideo(String title) {
 
         // ==> 4. Add your code here!
-        // System.out.println("-- To be implemented!"); // comment this statement!
+        // out.println("-- To be implemented!"); // comment this statement!
 
         // Find the StockItem that the user is attempting to sell.
         StockItem item = inventory.findStockItem(title);
@@ -252,19 +455,19 @@ public class InventoryApp {
         // Ensure the title exists.
         if(item == null) {
             // Give the user an error message.
-            System.out.printf("Title \"%s\" cannot be found!\n", title);
+            out.printf("Title \"%s\" cannot be found!\n", title);
+
+            // Suggest titles with a similar spelling.
+            suggestTitles(title);
 
             // Exit the method without continuing.
             return;
         }
 
-        // Get the have value of the item.
-        int haveValue = item.getHave();
-
         // Check if the title is sold out.
-        if(haveValue <= 0) {
+        if(item.getHave() <= 0) {
             // Inform the user that the title is sold out and that they should put a name on the waiting list.
-            System.out.printf("The title is sold out! Put a name on the waiting list for stock item \"%s\"\n", title);
+            out.printf("The title is sold out! Put a name on the waiting list for stock item \"%s\"\n", title);
         }
 
         // Prompt the user to enter a first name.
@@ -282,25 +485,14 @@ public class InventoryApp {
         // Create a Person object with the entered name.
         Person person = new Person(firstName, lastName);
 
-        // Attempt to add this person to the customer list.
-        inventory.addToCustomerList(person);
-
-        // Check if the title is not sold out.
-        if(haveValue > 0) {
+        // Sell a video to the person, or put them at the end of the waiting
+        // list if the title is sold out; either way they become a customer.
+        if(inventory.sellStockItem(item, person)) {
             // Inform the user that the title has been sold.
-            System.out.printf("-- A video of title \"%s\" is sold to %s.\n", title, person);
-
-            // Decrease the have value by one.
-            item.setHave(haveValue - 1);
+            out.printf("-- A video of title \"%s\" is sold to %s.\n", title, person);
         } else {
-            // Get the waiting list of the title.
-            WaitingList waitingList = item.getWaitingList();
-
-            // Add the person to the waiting list at the end.
-            waitingList.addLast(person);
-
             // Inform the user that the name has been added to the waiting list.
-            System.out.printf("-- \"%s\" has been put on the waiting list for stock item \"%s\".\n", person, title);
+            out.printf("-- \"%s\" has been put on the waiting list for stock item \"%s\".\n", person, title);
         }
 
     }
@@ -316,7 +508,7 @@ public class InventoryApp {
     private void deliverVideo(String title) {
 
         // ==> 5. Add your code here!
-        // System.out.println("-- To be implemented!"); // comment this statement!
+        // out.println("-- To be implemented!"); // comment this statement!
 
         // Find the StockItem that the user is attempting to deliver.
         StockItem item = inventory.findStockItem(title);
@@ -324,50 +516,130 @@ public class InventoryApp {
         // Ensure the title exists.
         if(item == null) {
             // Give the user an error message.
-            System.out.printf("Title \"%s\" cannot be found!\n", title);
+            out.printf("Title \"%s\" cannot be found!\n", title);
+
+            // Suggest titles with a similar spelling.
+            suggestTitles(title);
 
             // Exit the method without continuing.
             return;
         }
 
-        // Get the have value of the item.
-        int haveValue = item.getHave();
-
-        // Get the waiting list for the title.
-        WaitingList waitingList = item.getWaitingList();
-
         // Check if the have value is greater than zero.
-        if(haveValue > 0) {
-            // Deliver videos to each person on the waiting list as long as the have value is greater than 0.
-            while(!waitingList.isEmpty() && item.getHave() > 0) {
-                // While there are still people on the waiting list and titles to be delivered.
-                // Get the first person on the waiting list.
-                Person person = (Person) waitingList.get(1);
+        if(item.getHave() > 0) {
+            // Take one person off the front of the waiting list for each video
+            // in stock, and decrease the have value by the number delivered.
+            Object[] people = inventory.deliverStockItem(item);
 
+            // Deliver a video to each of those people.
+            for(Object person : people) {
                 // Inform the user that the video has been delivered.
-                System.out.printf("-- The video \"%s\" is delivered to \"%s\"\n", title, person);
-
-                // Remove the person from the waiting list.
-                waitingList.removeFirst();
-
-                // Decrease the have value by one.
-                haveValue--;
-                item.setHave(haveValue);
+                out.printf("-- The video \"%s\" is delivered to \"%s\"\n", title, person);
             }
         } else {
             // Inform the user that no stock is available.
-            System.out.println("-- No video for this title is currently in stock!");
-            System.out.println("   Please order first!");
+            out.println("-- No video for this title is currently in stock!");
+            out.println("   Please order first!");
         }
 
     }
 
     /**
-     * Displays the customer list.
+     * Lists the titles between a specified title and a second title that
+     * the user is prompted for, both included.
+     * @param first the first title of the range
      */
-    private void displayCustomerList() {
-        // Display the customer list.
-        inventory.displayCustomerList();
+    private void listTitlesBetween(String first) {
+        // Prompt the user to enter the last title of the range.
+        readInput("Input the last title: ");
+
+        // List the titles in the range.
+        inventory.listTitlesBetween(first, nextLine, out);
+    }
+
+    /**
+     * Displays the customer list, or one page of it.
+     * @param args empty to display the whole list; otherwise the page size,
+     *        optionally followed by the last name to start at or by the
+     *        token printed after the previous page ("@" token)
+     */
+    private void displayCustomerList(String args) {
+        // Display the whole customer list if no page size was given.
+        if (args.isEmpty()) {
+            inventory.displayCustomerList(out);
+            return;
+        }
+
+        // Split the arguments into the page size and the start.
+        String[] parts = args.split(" ", 2);
+        int size = parsePageSize(parts[0]);
+        if (size < 1) return;
+        String start = parts.length > 1 ? parts[1].trim() : "";
+
+        // Fetch the page, resuming from a token or starting at a last name.
+        Page<Person> page;
+        try {
+            page = start.startsWith("@")
+                    ? inventory.nextCustomerPage(start.substring(1), size)
+                    : inventory.customerPage(start.isEmpty() ? null : start, size);
+        } catch (IllegalArgumentException e) {
+            out.println("** Invalid page token!");
+            return;
+        }
+
+        // Display the page, and how to get the next one.
+        inventory.displayCustomerList(page, out);
+        if (page.hasMore())
+            out.println("-- More customers: C " + size + " @" + page.getNextToken());
+    }
+
+    /**
+     * Lists the inventory, or one page of it.
+     * @param args empty to list every title; otherwise the page size,
+     *        optionally followed by the title to start at or by the token
+     *        printed after the previous page ("@" token)
+     */
+    private void listInventory(String args) {
+        // List every title if no page size was given.
+        if (args.isEmpty()) {
+            inventory.listInventory(out);
+            return;
+        }
+
+        // Split the arguments into the page size and the start.
+        String[] parts = args.split(" ", 2);
+        int size = parsePageSize(parts[0]);
+        if (size < 1) return;
+        String start = parts.length > 1 ? parts[1].trim() : "";
+
+        // Fetch the page, resuming from a token or starting at a title.
+        Page<StockItem> page;
+        try {
+            page = start.startsWith("@")
+                    ? inventory.nextTitlePage(start.substring(1), size)
+                    : inventory.titlePage(start.isEmpty() ? null : start, size);
+        } catch (IllegalArgumentException e) {
+            out.println("** Invalid page token!");
+            return;
+        }
+
+        // List the page, and how to get the next one.
+        inventory.listInventory(page, out);
+        if (page.hasMore())
+            out.println("-- More titles: L " + size + " @" + page.getNextToken());
+    }
+
+    // Parse a page size. Returns 0 (after printing an error message) if
+    // it is not a positive number.
+    private int parsePageSize(String text) {
+        try {
+            int size = Integer.parseInt(text);
+            if (size > 0) return size;
+        } catch (NumberFormatException e) {
+            // reported below
+        }
+        out.println("** Invalid page size: " + text);
+        return 0;
     }
 
     /**
@@ -381,7 +653,7 @@ public class InventoryApp {
         // Ensure the title exists.
         if(item == null) {
             // Give the user an error message.
-            System.out.printf("** Title (%s) not found!\n", title);
+            out.printf("** Title (%s) not found!\n", title);
 
             // Exit the method without continuing.
             return;
@@ -391,7 +663,7 @@ public class InventoryApp {
         inventory.deleteStockItem(item);
 
         // Inform the user that the title has been removed.
-        System.out.printf("-- Title (%s) has been removed!\n", title);
+        out.printf("-- Title (%s) has been removed!\n", title);
     }
 
     /**
@@ -414,7 +686,7 @@ public class InventoryApp {
         Person person = new Person(firstName, lastName);
 
         // Delete the person from the customer list.
-        inventory.deleteFromCustomerList(person);
+        inventory.deleteFromCustomerList(person, out);
     }
 
     /**
@@ -422,7 +694,7 @@ public class InventoryApp {
      */
     private void deleteAll() {
         // Warn the user that this will delete all elements.
-        System.out.println("Warning: All elements in the inventory list and the customer list will be removed!");
+        out.println("Warning: All elements in the inventory list and the customer list will be removed!");
 
         // Prompt the user asking if they would like to proceed.
         nextLine = "";
@@ -439,94 +711,302 @@ public class InventoryApp {
             inventory.deleteAllFromCustomerList();
 
             // Inform the user that all elements have been removed.
-            System.out.println("All elements in the inventory list and the customer list have been removed!");
+            out.println("All elements in the inventory list and the customer list have been removed!");
         } else {
             // Inform the user that the elements have remained as they were.
-            System.out.println("No elements have been removed.");
+            out.println("No elements have been removed.");
         }
     }
 
     // Display the help menu for user interface
     //
     private void helpMenu() {
-        System.out.println();
-        System.out.println("                             =========");
-        System.out.println("                             Help Menu");
-        System.out.println("                             =========");
-        System.out.println("---------------------------------------------------------------------");
-        System.out.println("H         (Help)      Help menu");
-        System.out.println("I <title> (inquire)   Display the inventory info");
-        System.out.println("L         (list)      List the entire inventory");
-        System.out.println("A <title> (add)       Add a new title to the inventory");
-        System.out.println("M <title> (modify)    Modify the want value for a specific title");
-        System.out.println("D <title> (delivery)  Deliver videos to people on the waiting list");
-        System.out.println("O         (order)     Display the purchase order");
-        System.out.println("R         (return)    Display the return order");
-        System.out.println("S <title> (sell)      Sell a specified title");
-        System.out.println("Q         (quit)      Save the inventory info and terminate execution");
-        System.out.println("---------------------------------------------------------------------");
+        out.println();
+        out.println("                             =========");
+        out.println("                             Help Menu");
+        out.println("                             =========");
+        out.println("---------------------------------------------------------------------");
+        out.println("H         (Help)      Help menu");
+        out.println("I <title> (inquire)   Display the inventory info");
+        out.println("L         (list)      List the entire inventory");
+        out.println("L <n>     (list)      List n titles; add a title or @<token> to resume");
+        out.println("C <n>     (customers) List n customers; add a last name or @<token>");
+        out.println("P <text>  (prefix)    List the titles that start with the text");
+        out.println("B <title> (between)   List the titles from this title to another");
+        out.println("F <title> (find)      List the titles spelled most like this one");
+        out.println("A <title> (add)       Add a new title to the inventory");
+        out.println("U <file>  (upload)    Add the titles in a CSV file of title,want[,have]");
+        out.println("E <file>  (export)    Export titles, waiting lists and customers to");
+        out.println("                      CSV (file.csv) or JSON Lines (other names)");
+        out.println("M <title> (modify)    Modify the want value for a specific title");
+        out.println("D <title> (delivery)  Deliver videos to people on the waiting list");
+        out.println("O         (order)     Display the purchase order");
+        out.println("R         (return)    Display the return order");
+        out.println("S <title> (sell)      Sell a specified title");
+        out.println("Q         (quit)      Save the inventory info and terminate execution");
+        out.println("stats     (stats)     Display command latencies and operation counts");
+        out.println("---------------------------------------------------------------------");
 
     }
 
-    // process user input and print out the results
-    public void processInput() {
-        Inventory inv = null;
-        StockItem stockItem;
-        String command, title =  null;
+    // Restore the inventory from the data file and replay the journal of
+    // changes made since, reporting progress to out.
+    static Inventory openInventory(PrintStream out) {
+        Inventory inventory = new Inventory(COLUMNAR);
+        Inventory inv;
 
-        System.out.println("Restoring inventory from file \"inventory.dat\" ... ");
-        if ((inv = (Inventory) inventory.restoreInventory()) != null)
+        out.println("Restoring inventory from file \"inventory.dat\" ... ");
+        if ((inv = (Inventory) inventory.restoreInventory(DATA_FILE, LAZY_RESTORE)) != null)
             inventory = inv;
         else {
-            System.out.println("Restore inventory error!");
+            out.println("Restore inventory error!");
+        }
+
+        try {
+            int replayed = inventory.openJournal(JOURNAL_FILE,
+                    Journal.SyncPolicy.valueOf(JOURNAL_SYNC.toUpperCase()),
+                    JOURNAL_FLUSH_MILLIS, JOURNAL_CHECKPOINT);
+            if (replayed > 0)
+                out.println("Replayed " + replayed + " change(s) from \"" +
+                            JOURNAL_FILE + "\"");
+        } catch (Exception e) {
+            out.println(e);
+            out.println("Journal error! Changes will only be saved on quit.");
+        }
+        return inventory;
+    }
+
+    // process user input and print out the results
+    public void processInput() {
+        inventory = openInventory(out);
+
+        boolean quit = runSession();
+        awaitExports();
+        if (quit) {
+            out.print("\nSaving inventory to file \"inventory.dat\" ... ");
+            inventory.saveInventory();
+            inventory.closeJournal();
+            out.println("Done!");
+            System.exit(0);
         }
 
+        // the input ended without Q: the journal keeps the changes
+        inventory.closeJournal();
+    }
+
+    // Read and run commands until Q is entered or the input ends. Returns
+    // true if the session ended with Q.
+    boolean runSession() {
+        String title =  null;
+
         helpMenu(); // display help menu
 
         while(true) {
-            readInput("\nInput the command (enter \"Q\" or \"q\" to quit): ");
+            try {
+                readInput("\nInput the command (enter \"Q\" or \"q\" to quit): ");
+            } catch (UncheckedIOException e) {
+                return false;
+            }
+
+            // checked before the command letter, since it starts with S
+            if (nextLine.trim().equalsIgnoreCase("stats")) {
+                Metrics.report(out);
+                continue;
+            }
+
+            // the command is the first character that is not blank; the
+            // title, if any, follows it and a separator, as in runBatch
+            int first = 0;
+            while (first < nextLine.length() && nextLine.charAt(first) <= ' ') first++;
+            if (first == nextLine.length() ||
+                    (isTitleCommand(nextLine.charAt(first)) && nextLine.length() < 2)) {
+                out.println("Invalid input! Type 'H' for help.");
+                continue;
+            }
+            char command = nextLine.charAt(first);
+            if (isTitleCommand(command)) {
+                title = nextLine.substring(2);
+            } else if (isPagedCommand(command)) {
+                title = nextLine.length() > 2 ? nextLine.substring(2).trim() : "";
+            }
 
-            StringTokenizer input = new StringTokenizer(nextLine);
             try {
-                command = input.nextToken();
-                if (command.charAt(0) == 'I' || command.charAt(0) == 'i' ||
-                    command.charAt(0) == 'A' || command.charAt(0) == 'a' ||
-                    command.charAt(0) == 'M' || command.charAt(0) == 'm' ||
-                    command.charAt(0) == 'D' || command.charAt(0) == 'd' ||
-                    command.charAt(0) == 'S' || command.charAt(0) == 's' ||
-                    command.charAt(0) == 'X' || command.charAt(0) == 'x') {
-                    title = nextLine.substring(2);
-                }
-            } catch (Exception e) {
-                System.out.println("Invalid input! Type 'H' for help.");
+                if (!runTimedCommand(command, title))
+                    return true;
+            } catch (UncheckedIOException e) {
+                return false; // the input ended in the middle of a command
+            } catch (WaitingListException | TitleRemovedException e) {
+                out.println("** " + e.getMessage());
+            } catch (ListException e) {
+                // another session changed the title list under this command
+                out.println("** The inventory was changed by another " +
+                            "session; try again.");
+            }
+            inventory.checkpointIfDue();
+        }
+    }
+
+    // Run the commands of a batch, one per line, until Q or the end of the
+    // input, without prompts. After the command letter and one separator,
+    // a line holds the title (for I, A, M, D, S, X, P, B and F) or the file
+    // name (for U and E) and then the answers to the command's prompts, all
+    // separated by '|':
+    //     S <title>|<first name>|<last name>
+    //     M <title>|<want value>
+    //     B <first title>|<last title>
+    //     L <page size> [<first title> | @<token>]   (C likewise)
+    //     Y <first name>|<last name>
+    //     Z Y
+    // A line holding only "stats" prints the statistics (see metrics.Metrics).
+    // The inventory is saved at the end, and also whenever the journal
+    // reaches BATCH_CHECKPOINT records, so a batch that dies before the end
+    // leaves a journal that is quick to replay.
+    // Returns the number of commands run.
+    long runBatch() throws IOException {
+        String line;
+        long commands = 0;
+        int lineNum = 0;
+
+        batch = true;
+        while ((line = stdin.readLine()) != null) {
+            lineNum++;
+            if (line.isEmpty()) continue;
+            if (line.equalsIgnoreCase("stats")) {
+                Metrics.report(out);
                 continue;
             }
 
-            switch (command.charAt(0)) {
-               case 'H': case 'h': helpMenu(); break;
-               case 'L': case 'l': inventory.listInventory(); break;
-               case 'I': case 'i': displayVideoInfo(title); break;
-               case 'A': case 'a': addNewTitle(title); break;
-               case 'M': case 'm': modifyWantValue(title); break;
-               case 'D': case 'd': deliverVideo(title); break;
-               case 'O': case 'o': purchaseOrder(); break;
-               case 'R': case 'r': returnOrder(); break;
-               case 'S': case 's': sellVideo(title); break;
-               case 'C': case 'c': displayCustomerList(); break;
-               case 'X': case 'x': deleteTitle(title); break;
-               case 'Y': case 'y': deleteCustomer(); break;
-               case 'Z': case 'z': deleteAll(); break;
-               case 'Q': case 'q':
-                  System.out.print("\nSaving inventory to file \"inventory.dat\" ... ");
-                  inventory.saveInventory();
-                  System.out.println("Done!");
-                  System.exit(0);
-               default: System.out.println("Invalid input! Type 'H' for help.");
+            char command = line.charAt(0);
+            batchLine = line;
+            batchPos = line.length() > 2 ? 2 : -1;
+            try {
+                String title = null;
+                if (isTitleCommand(command))
+                    title = nextField();
+                else if (isPagedCommand(command))
+                    title = batchPos >= 0 ? nextField().trim() : "";
+                if (!runTimedCommand(command, title))
+                    break;
+                if (++commands % BATCH_CHECKPOINT_INTERVAL == 0)
+                    inventory.checkpointIfDue(BATCH_CHECKPOINT);
+            } catch (IllegalArgumentException | WaitingListException |
+                     TitleRemovedException e) {
+                out.println("** Line " + lineNum + ": " + e.getMessage());
+            } catch (ListException e) {
+                out.println("** Line " + lineNum + ": the title list " +
+                            "could not be changed");
             }
         }
+        return commands;
     }
 
-    public static void main(String[] args) {
+    // the commands that are followed by a title (or, for U and E, a file
+    // name)
+    private static boolean isTitleCommand(char command) {
+        switch (command) {
+            case 'I': case 'i': case 'A': case 'a': case 'M': case 'm':
+            case 'D': case 'd': case 'S': case 's': case 'X': case 'x':
+            case 'P': case 'p': case 'B': case 'b': case 'F': case 'f':
+            case 'U': case 'u': case 'E': case 'e':
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    // the commands that may be followed by paging options
+    private static boolean isPagedCommand(char command) {
+        switch (command) {
+            case 'L': case 'l': case 'C': case 'c':
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    // Run one command, recording its latency when metrics are on; time
+    // spent waiting for the answers to its prompts is not counted.
+    // Returns false for Q.
+    private boolean runTimedCommand(char command, String title) {
+        char upper = Character.toUpperCase(command);
+        LatencyHistogram histogram = upper >= 'A' && upper <= 'Z'
+                                   ? COMMAND_LATENCY[upper - 'A'] : null;
+        if (histogram == null) {
+            return runCommand(command, title);
+        }
+        long start = System.nanoTime();
+        inputNanos = 0;
+        try {
+            return runCommand(command, title);
+        } finally {
+            histogram.record(System.nanoTime() - start - inputNanos);
+        }
+    }
+
+    // Run one command. Returns false for Q.
+    private boolean runCommand(char command, String title) {
+        switch (command) {
+           case 'H': case 'h': helpMenu(); break;
+           case 'L': case 'l': listInventory(title); break;
+           case 'P': case 'p': inventory.listTitlesWithPrefix(title, out); break;
+           case 'B': case 'b': listTitlesBetween(title); break;
+           case 'F': case 'f': findSimilarTitles(title); break;
+           case 'I': case 'i': displayVideoInfo(title); break;
+           case 'A': case 'a': addNewTitle(title); break;
+           case 'M': case 'm': modifyWantValue(title); break;
+           case 'D': case 'd': deliverVideo(title); break;
+           case 'O': case 'o': purchaseOrder(); break;
+           case 'R': case 'r': returnOrder(); break;
+           case 'S': case 's': sellVideo(title); break;
+           case 'C': case 'c': displayCustomerList(title); break;
+           case 'X': case 'x': deleteTitle(title); break;
+           case 'Y': case 'y': deleteCustomer(); break;
+           case 'Z': case 'z': deleteAll(); break;
+           case 'U': case 'u': importTitles(title); break;
+           case 'E': case 'e': exportInventory(title); break;
+           case 'Q': case 'q': return false;
+           default: out.println("Invalid input! Type 'H' for help.");
+        }
+        return true;
+    }
+
+    // Batch mode: run the commands in a file (or standard input, if file is
+    // null), save the inventory, and report the number of commands per
+    // second. Output is buffered and written in large chunks.
+    static void processBatch(String file) throws IOException {
+        PrintStream out = new PrintStream(new BufferedOutputStream(
+                new FileOutputStream(FileDescriptor.out), BATCH_BUFFER), false);
+        BufferedReader in = new BufferedReader(new InputStreamReader(
+                file == null ? System.in : new FileInputStream(file)), BATCH_BUFFER);
+
+        Inventory inventory = openInventory(out);
+        InventoryApp app = new InventoryApp(inventory, in, out);
+        long start = System.nanoTime();
+        long commands;
+        try {
+            commands = app.runBatch();
+        } finally {
+            in.close();
+        }
+        app.awaitExports();
+        double seconds = (System.nanoTime() - start) / 1e9;
+
+        out.print("\nSaving inventory to file \"inventory.dat\" ... ");
+        inventory.saveInventory();
+        inventory.closeJournal();
+        out.println("Done!");
+        out.printf("-- %d command(s) in %.3f s (%.0f commands/s)%n",
+                   commands, seconds, commands / Math.max(seconds, 1e-9));
+        out.flush();
+    }
+
+    // Usage: java InventoryApp                  (interactive)
+    //        java InventoryApp -batch [file]    (batch; see runBatch)
+    public static void main(String[] args) throws IOException {
+        if (args.length > 0 && args[0].equals("-batch")) {
+            processBatch(args.length > 1 ? args[1] : null);
+            return;
+        }
         InventoryApp inventoryApp = new InventoryApp();
         inventoryApp.processInput();
     }
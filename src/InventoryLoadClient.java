@@ -0,0 +1,197 @@
+import java.io.BufferedInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.SocketAddress;
+import java.nio.channels.Channels;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Load test for InventoryServer. Opens many sessions at once, runs a mix
+ * of inquire, sell, deliver and modify commands on each, and reports the
+ * throughput and the latency percentiles of single commands.
+ *
+ * Usage: java InventoryLoadClient [port | unix:path] [sessions]
+ *                                 [commands per session] [titles]
+ *
+ * A command's latency runs from sending it to receiving the next command
+ * prompt. All sessions connect before any of them starts sending.
+ */
+public class InventoryLoadClient {
+
+    private static final byte[] PROMPT =
+            "quit): ".getBytes(StandardCharsets.UTF_8);
+
+    // the end of the prompt A shows for a new title; a title that is
+    // already there gets the command prompt instead
+    private static final byte[] WANT_PROMPT =
+            "\": ".getBytes(StandardCharsets.UTF_8);
+
+    private final SocketAddress address;
+    private final int titles;
+
+    // constructor
+    public InventoryLoadClient(SocketAddress address, int titles) {
+        this.address = address;
+        this.titles = titles;
+    }
+
+    // add the titles the sessions work on; titles already there are kept
+    void addTitles() throws IOException {
+        try (SocketChannel channel = SocketChannel.open(address)) {
+            InputStream in = new BufferedInputStream(Channels.newInputStream(channel));
+            OutputStream out = Channels.newOutputStream(channel);
+            awaitPrompt(in);
+            for (int i = 0; i < titles; i++) {
+                send(out, "A load-" + i + "\n");
+                if (awaitPrompt(in, WANT_PROMPT, PROMPT) == 0) {
+                    send(out, "10\n");
+                    awaitPrompt(in);
+                }
+            }
+            send(out, "O\n");
+            awaitPrompt(in);
+            send(out, "Q\n");
+        }
+    }
+
+    // Run the load and print the results. Each session records the
+    // latency of each of its commands in nanoseconds.
+    void run(int sessions, int commands) throws InterruptedException {
+        long[][] latencies = new long[sessions][];
+        CountDownLatch connected = new CountDownLatch(sessions);
+        CountDownLatch start = new CountDownLatch(1);
+        AtomicInteger failures = new AtomicInteger();
+
+        ExecutorService executor = InventoryServer.newSessionExecutor();
+        for (int s = 0; s < sessions; s++) {
+            final int session = s;
+            executor.execute(() -> {
+                try (SocketChannel channel = SocketChannel.open(address)) {
+                    InputStream in = new BufferedInputStream(
+                            Channels.newInputStream(channel));
+                    OutputStream out = Channels.newOutputStream(channel);
+                    awaitPrompt(in);
+                    connected.countDown();
+                    start.await();
+                    latencies[session] = runCommands(in, out, session, commands);
+                    send(out, "Q\n");
+                } catch (Exception e) {
+                    if (failures.getAndIncrement() == 0) {
+                        System.out.println("Session failed: " + e);
+                    }
+                    connected.countDown();
+                }
+            });
+        }
+
+        connected.await();
+        long begin = System.nanoTime();
+        start.countDown();
+        executor.shutdown();
+        executor.awaitTermination(1, TimeUnit.HOURS);
+        long elapsed = System.nanoTime() - begin;
+
+        long[] all = Arrays.stream(latencies)
+                .filter(l -> l != null)
+                .flatMapToLong(Arrays::stream)
+                .sorted()
+                .toArray();
+        System.out.printf("sessions:   %d (%d failed)%n", sessions, failures.get());
+        System.out.printf("commands:   %d in %.2f s%n", all.length, elapsed / 1e9);
+        System.out.printf("throughput: %.0f commands/s%n", all.length / (elapsed / 1e9));
+        if (all.length > 0) {
+            System.out.printf("latency:    p50 %.3f ms, p99 %.3f ms, max %.3f ms%n",
+                              percentile(all, 50) / 1e6, percentile(all, 99) / 1e6,
+                              all[all.length - 1] / 1e6);
+        }
+    }
+
+    // run a random mix of commands in one session
+    private long[] runCommands(InputStream in, OutputStream out, int session,
+                               int commands) throws IOException {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        long[] latency = new long[commands];
+
+        for (int i = 0; i < commands; i++) {
+            String title = "load-" + random.nextInt(titles);
+            int pick = random.nextInt(100);
+            String command;
+            if (pick < 50) {
+                command = "I " + title + "\n";
+            } else if (pick < 80) {
+                command = "S " + title + "\nClient\n" + session + "\n";
+            } else if (pick < 90) {
+                command = "D " + title + "\n";
+            } else {
+                command = "M " + title + "\n" + random.nextInt(20) + "\n";
+            }
+
+            long begin = System.nanoTime();
+            send(out, command);
+            awaitPrompt(in);
+            latency[i] = System.nanoTime() - begin;
+        }
+        return latency;
+    }
+
+    private static void send(OutputStream out, String text) throws IOException {
+        out.write(text.getBytes(StandardCharsets.UTF_8));
+        out.flush();
+    }
+
+    // read until the end of the next command prompt
+    private static void awaitPrompt(InputStream in) throws IOException {
+        awaitPrompt(in, PROMPT);
+    }
+
+    // read until the end of whichever of the prompts comes first; returns
+    // its index
+    private static int awaitPrompt(InputStream in, byte[]... prompts)
+            throws IOException {
+        int[] matched = new int[prompts.length];
+        while (true) {
+            int b = in.read();
+            if (b < 0) {
+                throw new EOFException("Server closed the session");
+            }
+            for (int p = 0; p < prompts.length; p++) {
+                byte[] prompt = prompts[p];
+                if (b == prompt[matched[p]]) {
+                    matched[p]++;
+                } else {
+                    matched[p] = b == prompt[0] ? 1 : 0;
+                }
+                if (matched[p] == prompt.length) {
+                    return p;
+                }
+            }
+        }
+    }
+
+    // nearest-rank percentile of sorted values
+    private static long percentile(long[] sorted, int p) {
+        int rank = (int) Math.ceil(p / 100.0 * sorted.length);
+        return sorted[Math.max(0, rank - 1)];
+    }
+
+    public static void main(String[] args) throws Exception {
+        SocketAddress address = InventoryServer.parseAddress(
+                args.length > 0 ? args[0] : String.valueOf(InventoryServer.DEFAULT_PORT));
+        int sessions = args.length > 1 ? Integer.parseInt(args[1]) : 1000;
+        int commands = args.length > 2 ? Integer.parseInt(args[2]) : 100;
+        int titles = args.length > 3 ? Integer.parseInt(args[3]) : 1000;
+
+        InventoryLoadClient client = new InventoryLoadClient(address, titles);
+        client.addTitles();
+        client.run(sessions, commands);
+    }
+}
@@ -0,0 +1,133 @@
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.Channels;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import inventory.*;
+
+/**
+ * Serves the InventoryApp command set to many clients at once. Every
+ * connection is a session with its own input and output, run on its own
+ * (virtual, where available) thread against one shared Inventory.
+ *
+ * Usage: java InventoryServer [port | unix:path]
+ *
+ * The server listens on the loopback interface on the given TCP port
+ * (default 7070), or on a Unix-domain socket at the given path. Q ends a
+ * session; changes are kept in the journal, and the inventory is saved
+ * when the server shuts down.
+ */
+public class InventoryServer {
+
+    static final int DEFAULT_PORT = 7070;
+    private static final int BACKLOG = 4096;
+
+    private final Inventory inventory;
+    private final ExecutorService sessions = newSessionExecutor();
+
+    // constructor
+    public InventoryServer(Inventory inventory) {
+        this.inventory = inventory;
+    }
+
+    // Accept connections on an address until the server is stopped, and
+    // run a session for each one.
+    public void serve(SocketAddress address) throws IOException {
+        boolean unix = address instanceof UnixDomainSocketAddress;
+        if (unix) {
+            // a socket file left behind by an earlier run blocks bind
+            Files.deleteIfExists(((UnixDomainSocketAddress) address).getPath());
+        }
+
+        try (ServerSocketChannel server = unix
+                ? ServerSocketChannel.open(StandardProtocolFamily.UNIX)
+                : ServerSocketChannel.open()) {
+            server.bind(address, BACKLOG);
+            System.out.println("Serving inventory on " + address);
+            while (true) {
+                SocketChannel channel = server.accept();
+                sessions.execute(() -> runSession(channel));
+            }
+        } finally {
+            sessions.shutdown();
+            if (unix) {
+                Files.deleteIfExists(((UnixDomainSocketAddress) address).getPath());
+            }
+        }
+    }
+
+    // run one client session on a connection, then close it
+    private void runSession(SocketChannel channel) {
+        try (SocketChannel c = channel) {
+            BufferedReader in = new BufferedReader(new InputStreamReader(
+                    Channels.newInputStream(c), StandardCharsets.UTF_8));
+            PrintStream out = new PrintStream(new BufferedOutputStream(
+                    Channels.newOutputStream(c)), false, StandardCharsets.UTF_8);
+
+            InventoryApp session = new InventoryApp(inventory, in, out);
+            boolean quit = session.runSession();
+            session.awaitExports();
+            if (quit) {
+                out.println("\nSession closed.");
+            }
+            out.flush();
+        } catch (IOException | RuntimeException e) {
+            System.out.println("Session error: " + e);
+        }
+    }
+
+    // One virtual thread per session on Java 21 and later, where
+    // Executors.newVirtualThreadPerTaskExecutor exists; otherwise one
+    // platform thread per session.
+    static ExecutorService newSessionExecutor() {
+        try {
+            return (ExecutorService) Executors.class
+                    .getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException e) {
+            return Executors.newCachedThreadPool(task -> {
+                Thread thread = new Thread(task, "inventory-session");
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+    }
+
+    // Parse "unix:path" as a Unix-domain socket address and anything else
+    // as a TCP port on the loopback interface.
+    static SocketAddress parseAddress(String arg) {
+        if (arg.startsWith("unix:")) {
+            return UnixDomainSocketAddress.of(Path.of(arg.substring(5)));
+        }
+        return new InetSocketAddress(InetAddress.getLoopbackAddress(),
+                                     Integer.parseInt(arg));
+    }
+
+    public static void main(String[] args) throws IOException {
+        SocketAddress address = parseAddress(
+                args.length > 0 ? args[0] : String.valueOf(DEFAULT_PORT));
+
+        Inventory inventory = InventoryApp.openInventory(System.out);
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            System.out.print("\nSaving inventory to file \"inventory.dat\" ... ");
+            inventory.saveInventory();
+            inventory.closeJournal();
+            System.out.println("Done!");
+        }));
+
+        new InventoryServer(inventory).serve(address);
+    }
+}
@@ -0,0 +1,145 @@
+package inventory;
+
+import java.util.Arrays;
+
+/**
+ * Columnar storage for the have and want values of the stock items in an
+ * inventory: two parallel int arrays indexed by a dense slot id. A stock
+ * item attached to the columns keeps only its slot id, and its getters
+ * and setters read and write the arrays.
+ *
+ * Bulk passes over all titles then run as plain loops over int arrays,
+ * which the JIT compiles to vector instructions, instead of following a
+ * pointer to every StockItem. Free slots hold zero in both columns, so
+ * the loops need not skip them.
+ *
+ * Not thread-safe; Inventory allocates and releases slots under its
+ * structure write lock, and each slot is guarded by its item's stripe.
+ * The totals are taken under the read lock only, so they may see some
+ * slots before and some after changes made meanwhile.
+ */
+class CountColumns {
+
+    private static final int DEFAULT_CAPACITY = 1024;
+
+    private int[] have = new int[DEFAULT_CAPACITY];
+    private int[] want = new int[DEFAULT_CAPACITY];
+    private int limit; // slots 0 .. limit-1 have been handed out
+
+    // released slots, reused before the arrays grow
+    private int[] free = new int[16];
+    private int numFree;
+
+    // take a slot for a stock item and store its values there
+    int allocate(int haveValue, int wantValue) {
+        int id;
+        if (numFree > 0) {
+            id = free[--numFree];
+        } else {
+            if (limit == have.length) {
+                int newCapacity = have.length + (have.length >> 1);
+                have = Arrays.copyOf(have, newCapacity);
+                want = Arrays.copyOf(want, newCapacity);
+            }
+            id = limit++;
+        }
+        have[id] = haveValue;
+        want[id] = wantValue;
+        return id;
+    }
+
+    // give a slot back; its values are cleared
+    void release(int id) {
+        have[id] = 0;
+        want[id] = 0;
+        if (numFree == free.length) {
+            free = Arrays.copyOf(free, numFree * 2);
+        }
+        free[numFree++] = id;
+    }
+
+    // release every slot
+    void clear() {
+        have = new int[DEFAULT_CAPACITY];
+        want = new int[DEFAULT_CAPACITY];
+        limit = 0;
+        numFree = 0;
+    }
+
+    int getHave(int id) {
+        return have[id];
+    }
+
+    void setHave(int id, int value) {
+        have[id] = value;
+    }
+
+    int getWant(int id) {
+        return want[id];
+    }
+
+    void setWant(int id, int value) {
+        want[id] = value;
+    }
+
+    ////////////////////
+    // Bulk operations
+    ////////////////////
+
+    // total of the have column
+    long totalHave() {
+        return sum(have, limit);
+    }
+
+    // total of the want column
+    long totalWant() {
+        return sum(want, limit);
+    }
+
+    private static long sum(int[] column, int n) {
+        long total = 0;
+        for (int i = 0; i < n; i++) {
+            total += column[i];
+        }
+        return total;
+    }
+
+    // total of the deficits (want - have, or 0 if a slot has enough)
+    long totalDeficit() {
+        int[] h = have, w = want;
+        int n = limit;
+        long total = 0;
+        for (int i = 0; i < n; i++) {
+            total += Math.max(w[i] - h[i], 0);
+        }
+        return total;
+    }
+
+    // Raise every have value to its want value; returns the number of
+    // videos that takes.
+    long applyPurchase() {
+        int[] h = have, w = want;
+        int n = limit;
+        long ordered = 0;
+        for (int i = 0; i < n; i++) {
+            int target = Math.max(h[i], w[i]);
+            ordered += target - h[i];
+            h[i] = target;
+        }
+        return ordered;
+    }
+
+    // Lower every have value to its want value; returns the number of
+    // videos that takes.
+    long applyReturn() {
+        int[] h = have, w = want;
+        int n = limit;
+        long returned = 0;
+        for (int i = 0; i < n; i++) {
+            int target = Math.min(h[i], w[i]);
+            returned += h[i] - target;
+            h[i] = target;
+        }
+        return returned;
+    }
+}
@@ -0,0 +1,69 @@
+package inventory;
+
+import java.util.ArrayList;
+
+/**
+ * Comma-separated values as in RFC 4180: a field that holds a comma or a
+ * double quote is enclosed in double quotes, and a double quote inside
+ * it is doubled ("Dr. Strangelove, or ..." and "The ""Burbs"""). Spaces
+ * around an unquoted field are dropped. A record is one line; quoted
+ * line breaks are written but not read.
+ */
+final class Csv {
+
+    private Csv() {}
+
+    // Split a line into its fields. Returns null if a quoted field is not
+    // closed, or is followed by anything but a comma.
+    static String[] split(String line) {
+        ArrayList<String> fields = new ArrayList<>(4);
+        StringBuilder field = new StringBuilder();
+        int i = 0;
+        int n = line.length();
+        while (true) {
+            while (i < n && line.charAt(i) == ' ') i++;
+            if (i < n && line.charAt(i) == '"') {
+                // quoted field: up to the next quote that is not doubled
+                i++;
+                while (true) {
+                    if (i == n) return null;
+                    char c = line.charAt(i++);
+                    if (c != '"') {
+                        field.append(c);
+                    } else if (i < n && line.charAt(i) == '"') {
+                        field.append('"');
+                        i++;
+                    } else {
+                        break;
+                    }
+                }
+                while (i < n && line.charAt(i) == ' ') i++;
+                if (i < n && line.charAt(i) != ',') return null;
+                fields.add(field.toString());
+            } else {
+                int end = line.indexOf(',', i);
+                if (end < 0) end = n;
+                fields.add(line.substring(i, end).trim());
+                i = end;
+            }
+            if (i >= n) break;
+            i++; // the comma
+            field.setLength(0);
+        }
+        return fields.toArray(new String[fields.size()]);
+    }
+
+    // A field as it is written to a line: enclosed in double quotes if it
+    // holds a comma, a double quote or a line break, or starts or ends
+    // with a space, which split would otherwise drop.
+    static String quote(String field) {
+        int n = field.length();
+        boolean plain = n == 0 ||
+                        (field.charAt(0) != ' ' && field.charAt(n - 1) != ' ');
+        for (int i = 0; plain && i < n; i++) {
+            char c = field.charAt(i);
+            plain = c != ',' && c != '"' && c != '\n' && c != '\r';
+        }
+        return plain ? field : '"' + field.replace("\"", "\"\"") + '"';
+    }
+}
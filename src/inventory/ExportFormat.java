@@ -0,0 +1,12 @@
+package inventory;
+
+/**
+ * The file formats that Inventory.exportInventory writes; see
+ * InventoryExport for their layout.
+ */
+public enum ExportFormat {
+    /** comma-separated values, one record per line after a header */
+    CSV,
+    /** JSON Lines: one JSON object per line */
+    JSON_LINES
+}
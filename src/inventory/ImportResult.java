@@ -0,0 +1,30 @@
+package inventory;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The outcome of Inventory.importCsv: the number of titles added, and one
+ * message for each row that was not, in the order of the rows, such as
+ * line 12: duplicate of line 3 ("Alien").
+ */
+public class ImportResult {
+    private final int imported;
+    private final List<String> rejected;
+
+    // constructor; see Inventory.importCsv
+    ImportResult(int imported, List<String> rejected) {
+        this.imported = imported;
+        this.rejected = Collections.unmodifiableList(rejected);
+    }
+
+    // get the number of titles added to the inventory
+    public int getImported() {
+        return imported;
+    }
+
+    // get a message for each rejected row, in the order of the rows
+    public List<String> getRejected() {
+        return rejected;
+    }
+}
@@ -1,23 +1,293 @@
 package inventory;
 
-import java.io.FileInputStream;
-import java.io.FileOutputStream;
+import java.io.BufferedReader;
+import java.io.IOException;
 import java.io.ObjectInputStream;
-import java.io.ObjectOutputStream;
+import java.io.PrintStream;
 import java.io.Serializable;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.Spliterator;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Predicate;
 
+import metrics.LatencyHistogram;
+import metrics.Metrics;
 import sortedList.*;
 import list.*;
 
-public class Inventory extends SortedList
-                       implements InventoryInterface, Serializable {
+public class Inventory implements SortedListInterface, InventoryInterface,
+                                  Serializable {
+
+    // Inventory list, sorted by title
+    SortedListInterface items;
 
     // Customer list
-    SortedList customerList;
+    SortedListInterface customerList;
+
+    // Index from title sort key to stock item, so single-title lookups
+    // do not search the sorted list. Kept in step with the title list by
+    // sortedAdd, sortedRemove and removeAll; rebuilt after deserialization.
+    // Being a concurrent map, it is read by findStockItem without locking.
+    private transient ConcurrentHashMap<String, StockItem> titleIndex =
+            new ConcurrentHashMap<>();
+
+    // Trigram index of the titles for findSimilarTitles. It is built by
+    // the first search and then kept in step with the title list like
+    // titleIndex; until then it is null, so an inventory that is never
+    // searched does not pay for it. Dropped by removeAll.
+    private transient TrigramIndex trigrams;
+
+    // Titles whose have value is below (deficit) or above (surplus) their
+    // want value, in title order. Every change to a have or want value
+    // made through this class reclassifies the stock item, so purchase and
+    // return orders visit only the titles in these sets instead of the
+    // whole inventory. Rebuilt after deserialization.
+    private transient ConcurrentSkipListSet<StockItem> deficit =
+            new ConcurrentSkipListSet<>();
+    private transient ConcurrentSkipListSet<StockItem> surplus =
+            new ConcurrentSkipListSet<>();
+
+    // Have and want values of the stock items, when this is a columnar
+    // inventory; null otherwise. Items are attached to the columns as they
+    // enter the title list and detached as they leave it.
+    private transient CountColumns columns;
+
+    // Locking. Changes to the structure of the title list, and saving,
+    // restoring and opening the journal, hold the write lock of
+    // structureLock. All other operations hold its read lock, plus the
+    // stripe lock of the stock item they change (chosen by title hash) or
+    // customerLock for the customer list, always in that order; one that
+    // changes a stock item first checks, under the stripe, that the item
+    // is still in the title list (see lockListedItem). So operations on
+    // titles in different stripes run in parallel, and findStockItem does
+    // not lock at all. An export holds the read lock, every stripe and
+    // customerLock only while it begins its epoch; then it reads a page
+    // at a time under the read lock while changes go on.
+    private static final int STRIPES = 64;
+    private transient ReentrantReadWriteLock structureLock =
+            new ReentrantReadWriteLock();
+    private transient ReentrantLock[] stripes = newStripes();
+    private transient ReentrantLock customerLock = new ReentrantLock();
+
+    // The running export, or null: every change to a title or the
+    // customer list tells it first, so it can write the inventory as it
+    // was when it began (see InventoryExport.Epoch). exportLock lets one
+    // export run at a time.
+    private transient volatile InventoryExport.Epoch exportEpoch;
+    private transient ReentrantLock exportLock = new ReentrantLock();
+
+    // Threads for exportInventoryAsync, shared by all inventories. They
+    // are daemons, so an export does not keep the JVM alive; callers that
+    // need the file wait for the future.
+    private static final ExecutorService EXPORTER =
+            Executors.newCachedThreadPool(r -> {
+                Thread t = new Thread(r, "inventory-export");
+                t.setDaemon(true);
+                return t;
+            });
 
-    // constructor
+    // Journal that every mutation is logged to, or null when not journaling,
+    // and the sequence number of the last journal record already reflected
+    // in the data file (see saveInventory and openJournal).
+    private transient Journal journal;
+    private transient long snapshotSequence;
+    private transient int checkpointRecords;
+
+    // Latencies of the operations whose cost grows with the inventory,
+    // recorded when metrics are on (see metrics.Metrics).
+    private static final LatencyHistogram INSERT_LATENCY =
+            Metrics.histogram("inventory.insertStockItem");
+    private static final LatencyHistogram DELETE_LATENCY =
+            Metrics.histogram("inventory.deleteStockItem");
+    private static final LatencyHistogram PURCHASE_LATENCY =
+            Metrics.histogram("inventory.purchaseOrder");
+    private static final LatencyHistogram RETURN_LATENCY =
+            Metrics.histogram("inventory.returnOrder");
+    private static final LatencyHistogram SAVE_LATENCY =
+            Metrics.histogram("inventory.saveInventory");
+    private static final LatencyHistogram RESTORE_LATENCY =
+            Metrics.histogram("inventory.restoreInventory");
+    private static final LatencyHistogram IMPORT_LATENCY =
+            Metrics.histogram("inventory.importCsv");
+    private static final LatencyHistogram EXPORT_LATENCY =
+            Metrics.histogram("inventory.exportInventory");
+
+    // constructor: keeps titles and customers in skip lists, which give
+    // O(log n) lookups, insertions and deletions
     public Inventory() {
-        customerList = new SortedList();
+        this(new SortedSkipList(), new SortedSkipList());
+    }
+
+    // constructor: keeps titles and customers in the given (empty) sorted
+    // lists, e.g. new SortedList() for the original linked implementation
+    // or new SortedArrayList() for catalogs that are mostly looked up
+    public Inventory(SortedListInterface items, SortedListInterface customerList) {
+        this(items, customerList, false);
+    }
+
+    // constructor: skip lists as above; if columnar is true, the have and
+    // want values of all stock items are kept in int arrays, which makes
+    // whole-inventory passes (totals, purchase and return orders) loops
+    // over primitive arrays
+    public Inventory(boolean columnar) {
+        this(new SortedSkipList(), new SortedSkipList(), columnar);
+    }
+
+    // constructor: the given (empty) sorted lists, and columnar storage
+    // for have and want values if columnar is true
+    public Inventory(SortedListInterface items, SortedListInterface customerList,
+                     boolean columnar) {
+        this.items = items;
+        this.customerList = customerList;
+        if (columnar) columns = new CountColumns();
+    }
+
+    // tell whether have and want values are kept in columns
+    public boolean isColumnar() {
+        return columns != null;
+    }
+
+    ////////////////////////////////////////////
+    // Sorted list operations on the title list
+    ////////////////////////////////////////////
+
+    public boolean isEmpty() {
+        return items.isEmpty();
+    }
+
+    public int size() {
+        return items.size();
+    }
+
+    public void add(int index, Object item) {
+        lockStructure();
+        try {
+            items.add(index, item);
+        } finally {
+            unlockStructure();
+        }
+    }
+
+    public Object get(int index) {
+        lockShared();
+        try {
+            return items.get(index);
+        } finally {
+            unlockShared();
+        }
+    }
+
+    public void remove(int index) {
+        lockStructure();
+        try {
+            items.remove(index);
+        } finally {
+            unlockStructure();
+        }
+    }
+
+    public void removeAll() {
+        lockStructure();
+        try {
+            exportTitlesRemoved();
+            items.removeAll();
+            detachAll();
+            titleIndex.clear();
+            trigrams = null;
+            deficit.clear();
+            surplus.clear();
+            log(j -> j.logClearItems());
+        } finally {
+            unlockStructure();
+        }
+    }
+
+    // iterators and spliterators are fail-fast; they are not protected
+    // against titles being added or deleted by other threads
+    public Iterator<Object> iterator() {
+        return items.iterator();
+    }
+
+    public Iterator<Object> iterator(int index) {
+        return items.iterator(index);
+    }
+
+    public Spliterator<Object> spliterator() {
+        return items.spliterator();
+    }
+
+    public Object[] toArray() {
+        lockShared();
+        try {
+            return items.toArray();
+        } finally {
+            unlockShared();
+        }
+    }
+
+    public void sortedAdd(Comparable newItem) {
+        lockStructure();
+        try {
+            items.sortedAdd(newItem);
+            track((StockItem) newItem);
+        } finally {
+            unlockStructure();
+        }
+    }
+
+    public void sortedAppend(Comparable newItem) {
+        lockStructure();
+        try {
+            items.sortedAppend(newItem);
+            track((StockItem) newItem);
+        } finally {
+            unlockStructure();
+        }
+    }
+
+    public void sortedRemove(Comparable anItem) {
+        lockStructure();
+        try {
+            items.sortedRemove(anItem);
+            StockItem removed = titleIndex.remove(((StockItem) anItem).getSortKey());
+            if (removed != null) {
+                InventoryExport.Epoch epoch = exportEpoch;
+                if (epoch != null) epoch.titleRemoved(removed);
+                removed.detach();
+            }
+            if (trigrams != null) trigrams.remove(((StockItem) anItem).getSortKey());
+            deficit.remove(anItem);
+            surplus.remove(anItem);
+        } finally {
+            unlockStructure();
+        }
+    }
+
+    public int locateIndex(Comparable anItem) {
+        lockShared();
+        try {
+            return items.locateIndex(anItem);
+        } finally {
+            unlockShared();
+        }
     }
 
     ///////////////////////
@@ -26,58 +296,675 @@ public class Inventory extends SortedList
 
     // list the inventory in alphabetical order by title
     public void listInventory() {
-        StockItem item;
-        System.out.println("\nList the inventory in alphabetical order by title");
-        System.out.println("=================================================");
+        listInventory(System.out);
+    }
+
+    // list the inventory in alphabetical order by title to a stream
+    public void listInventory(PrintStream out) {
+        ReportWriter report = new ReportWriter(out);
+        listInventory(report);
+        report.flush();
+    }
 
-        if (size() == 0) System.out.println("list is empty");
-        for (int i = 1; i <= size(); i++) {
-            item = (StockItem) get(i);
-            displayStockItemInfo(item);
+    // list the inventory in alphabetical order by title to a report; the
+    // titles are copied first, so a slow report holds no locks
+    public void listInventory(ReportWriter out) {
+        Object[] titles = toArray();
+        out.println();
+        out.println("List the inventory in alphabetical order by title");
+        out.println("=================================================");
+
+        if (titles.length == 0) out.println("list is empty");
+        for (Object dataItem : titles) {
+            displayStockItemInfo((StockItem) dataItem, out);
+        }
+    }
+
+    // a page of up to n titles, starting at the first title not before
+    // from (ignoring case), or at the first title if from is null
+    public Page<StockItem> titlePage(String from, int n) {
+        lockShared();
+        try {
+            return page(items, from == null ? null : new StockItem(from),
+                        false, n, TITLE_TOKEN);
+        } finally {
+            unlockShared();
+        }
+    }
+
+    // the page of up to n titles that follows the page that returned
+    // token; throws IllegalArgumentException if token is not a title
+    // page token
+    public Page<StockItem> nextTitlePage(String token, int n) {
+        String[] key = decodeToken(token, TITLE_TOKEN, 1);
+        lockShared();
+        try {
+            return page(items, new StockItem(key[0]), true, n, TITLE_TOKEN);
+        } finally {
+            unlockShared();
+        }
+    }
+
+    // list a page of titles to a stream
+    public void listInventory(Page<StockItem> page, PrintStream out) {
+        ReportWriter report = new ReportWriter(out);
+        listInventory(page, report);
+        report.flush();
+    }
+
+    // list a page of titles to a report
+    public void listInventory(Page<StockItem> page, ReportWriter out) {
+        out.println();
+        out.println("List the inventory in alphabetical order by title");
+        out.println("=================================================");
+
+        if (page.getItems().isEmpty()) out.println("no more titles");
+        for (StockItem item : page.getItems()) {
+            displayStockItemInfo(item, out);
         }
     }
 
     // find the inventory item associated with a title
     public StockItem findStockItem(String title) {
-        StockItem stockItemTmp = new StockItem(title);
-        int position = locateIndex(stockItemTmp);
+        return titleIndex.get(StockItem.sortKeyOf(title));
+    }
 
-        if (position > 0 && position < size()+1) {
-            StockItem stockItem = (StockItem)get(position);
-            if ((stockItemTmp.compareTo(stockItem) == 0))
-                return stockItem;
+    // the titles closest to a (possibly misspelled) title, most similar
+    // first: at most k of them, each with a similarity of at least
+    // minSimilarity, from 0 to 1 (see TrigramIndex)
+    public StockItem[] findSimilarTitles(String title, int k, double minSimilarity) {
+        lockShared();
+        try {
+            if (trigrams == null) {
+                // the first search builds the index under the write lock,
+                // then searches under the read lock like the others
+                unlockShared();
+                lockStructure();
+                try {
+                    if (trigrams == null) {
+                        TrigramIndex index = new TrigramIndex();
+                        for (Object dataItem : items) {
+                            index.add((StockItem) dataItem);
+                        }
+                        trigrams = index;
+                    }
+                } finally {
+                    lockShared();
+                    unlockStructure();
+                }
+            }
+            return trigrams.search(title, k, minSimilarity);
+        } finally {
+            unlockShared();
+        }
+    }
+
+    // the stock items whose titles start with prefix (ignoring case), in
+    // title order. locateIndex finds the first match and the items are
+    // read from there until the first title without the prefix, so the
+    // cost is O(log n) plus O(1) per match. Like iterator(), this is
+    // fail-fast and not protected against titles being added or deleted
+    // by other threads; see listTitlesWithPrefix.
+    public Iterator<StockItem> titlesWithPrefix(String prefix) {
+        String key = StockItem.sortKeyOf(prefix);
+        return new TitleRange(locateIndex(new StockItem(prefix)),
+                              item -> item.getSortKey().startsWith(key));
+    }
+
+    // the stock items with titles from first to last, both included
+    // (ignoring case), in title order; costs and caveats as for
+    // titlesWithPrefix
+    public Iterator<StockItem> titlesBetween(String first, String last) {
+        String key = StockItem.sortKeyOf(last);
+        return new TitleRange(locateIndex(new StockItem(first)),
+                              item -> item.getSortKey().compareTo(key) <= 0);
+    }
+
+    // list the titles that start with prefix to a stream
+    public void listTitlesWithPrefix(String prefix, PrintStream out) {
+        ReportWriter report = new ReportWriter(out);
+        listTitlesWithPrefix(prefix, report);
+        report.flush();
+    }
+
+    // list the titles that start with prefix to a report; the matches are
+    // copied under the lock, so a slow report holds no locks
+    public void listTitlesWithPrefix(String prefix, ReportWriter out) {
+        StockItem[] titles;
+        lockShared();
+        try {
+            titles = copyOf(titlesWithPrefix(prefix));
+        } finally {
+            unlockShared();
+        }
+        listTitles("Titles starting with \"" + prefix + "\"", titles, out);
+    }
+
+    // list the titles from first to last to a stream
+    public void listTitlesBetween(String first, String last, PrintStream out) {
+        ReportWriter report = new ReportWriter(out);
+        listTitlesBetween(first, last, report);
+        report.flush();
+    }
+
+    // list the titles from first to last to a report (see
+    // listTitlesWithPrefix)
+    public void listTitlesBetween(String first, String last, ReportWriter out) {
+        StockItem[] titles;
+        lockShared();
+        try {
+            titles = copyOf(titlesBetween(first, last));
+        } finally {
+            unlockShared();
+        }
+        listTitles("Titles from \"" + first + "\" to \"" + last + "\"",
+                   titles, out);
+    }
+
+    private static StockItem[] copyOf(Iterator<StockItem> titles) {
+        ArrayList<StockItem> copy = new ArrayList<>();
+        titles.forEachRemaining(copy::add);
+        return copy.toArray(new StockItem[0]);
+    }
+
+    private void listTitles(String heading, StockItem[] titles, ReportWriter out) {
+        out.println();
+        out.println(heading);
+        for (int i = 0; i < heading.length(); i++) out.print('=');
+        out.println();
+
+        if (titles.length == 0) out.println("no titles found");
+        for (StockItem item : titles) {
+            displayStockItemInfo(item, out);
+        }
+        if (titles.length > 0) {
+            out.print(titles.length).println(" title(s) found");
+        }
+    }
+
+    // The stock items from a position in the title list up to the first
+    // one outside a bound, read one at a time.
+    private class TitleRange implements Iterator<StockItem> {
+        private final Iterator<Object> titles;
+        private final Predicate<StockItem> inRange;
+        private StockItem next;
+
+        TitleRange(int index, Predicate<StockItem> inRange) {
+            this.titles = iterator(index);
+            this.inRange = inRange;
+            advance();
+        }
+
+        public boolean hasNext() {
+            return next != null;
+        }
+
+        public StockItem next() {
+            if (next == null) {
+                throw new NoSuchElementException();
+            }
+            StockItem item = next;
+            advance();
+            return item;
+        }
+
+        private void advance() {
+            next = null;
+            if (titles.hasNext()) {
+                StockItem item = (StockItem) titles.next();
+                if (inRange.test(item)) next = item;
+            }
         }
-        return null;
     }
 
     // display the inventory information for a specified stock item
     public void displayStockItemInfo(StockItem item) {
-        System.out.println("Video Title: " + item.getTitle());
-        System.out.println("[1] " + item.getHave() + " videos currently in stock");
-        System.out.println("[2] " + item.getWant() + " videos should be in stock");
-        System.out.print("[3] ");
-        displayWaitingList(item);
-        System.out.println("-------------------------------------------------");
+        displayStockItemInfo(item, System.out);
+    }
+
+    // display the inventory information for a stock item to a stream
+    public void displayStockItemInfo(StockItem item, PrintStream out) {
+        ReportWriter report = new ReportWriter(out);
+        displayStockItemInfo(item, report);
+        report.flush();
+    }
+
+    // display the inventory information for a stock item to a report
+    public void displayStockItemInfo(StockItem item, ReportWriter out) {
+        int have, want;
+        Object[] waiting;
+
+        // copy the values under the lock, print them after
+        ReentrantLock stripe = lockItem(item);
+        try {
+            have = item.getHave();
+            want = item.getWant();
+            waiting = item.getWaitingList().toArray();
+        } finally {
+            unlockItem(stripe);
+        }
+
+        out.print("Video Title: ").println(item.getTitle());
+        out.print("[1] ").print(have).println(" videos currently in stock");
+        out.print("[2] ").print(want).println(" videos should be in stock");
+        out.print("[3] ");
+        displayWaitingList(waiting, out);
+        out.println("-------------------------------------------------");
     }
 
     // replace the inventory item associated with a title
     public void replaceStockItem(String title, StockItem newStockItem) {
-        sortedRemove(new StockItem(title));
-        sortedAdd(newStockItem);
+        lockStructure();
+        try {
+            sortedRemove(new StockItem(title));
+            sortedAdd(newStockItem);
+            log(j -> j.logReplaceItem(title, newStockItem));
+        } finally {
+            unlockStructure();
+        }
     }
 
     // insert a new stock item into the inventory list
     public void insertStockItem(StockItem item) {
-        if (item != null)
-            sortedAdd(item);
-        else throw new ListException("insertStockItem (item == null)");
+        if (item != null) {
+            long start = Metrics.ENABLED ? System.nanoTime() : 0;
+            lockStructure();
+            try {
+                sortedAdd(item);
+                log(j -> j.logPutItem(item));
+            } finally {
+                unlockStructure();
+                if (Metrics.ENABLED) INSERT_LATENCY.recordSince(start);
+            }
+        } else throw new ListException("insertStockItem (item == null)");
+    }
+
+    // insert a new stock item into the inventory list unless a stock item
+    // with the same title is already there; returns true if it was inserted
+    public boolean insertNewStockItem(StockItem item) {
+        if (item != null) {
+            lockStructure();
+            try {
+                if (findStockItem(item.getTitle()) != null) return false;
+                insertStockItem(item);
+                return true;
+            } finally {
+                unlockStructure();
+            }
+        } else throw new ListException("insertNewStockItem (item == null)");
     }
 
     // delete a stock item from the inventory list
     public void deleteStockItem(StockItem item) {
-        if (item != null)
-            sortedRemove(item);
-        else throw new ListException("deleteStockItem (item == null)");
+        if (item != null) {
+            long start = Metrics.ENABLED ? System.nanoTime() : 0;
+            lockStructure();
+            try {
+                sortedRemove(item);
+                log(j -> j.logDeleteItem(item.getTitle()));
+            } finally {
+                unlockStructure();
+                if (Metrics.ENABLED) DELETE_LATENCY.recordSince(start);
+            }
+        } else throw new ListException("deleteStockItem (item == null)");
+    }
+
+    // set the number of videos in stock for a stock item
+    public void setHave(StockItem item, int have) {
+        ReentrantLock stripe = lockListedItem(item);
+        try {
+            preserve(item);
+            item.setHave(have);
+            reclassify(item);
+            log(j -> j.logSetHave(item.getTitle(), have));
+        } finally {
+            unlockItem(stripe);
+        }
+    }
+
+    // set the number of videos that should be in stock for a stock item
+    public void setWant(StockItem item, int want) {
+        ReentrantLock stripe = lockListedItem(item);
+        try {
+            preserve(item);
+            item.setWant(want);
+            reclassify(item);
+            log(j -> j.logSetWant(item.getTitle(), want));
+        } finally {
+            unlockItem(stripe);
+        }
+    }
+
+    // sell a video of a stock item to a person, or put the person at the
+    // end of the waiting list if the title is sold out; the person is
+    // added to the customer list either way. Returns true if a video was
+    // sold.
+    public boolean sellStockItem(StockItem item, Person person) {
+        ReentrantLock stripe = lockListedItem(item);
+        try {
+            addToCustomerList(person);
+            preserve(item);
+            int have = item.getHave();
+            if (have > 0) {
+                item.setHave(have - 1);
+                reclassify(item);
+                log(j -> j.logSetHave(item.getTitle(), have - 1));
+                return true;
+            }
+            item.getWaitingList().addLast(person);
+            log(j -> j.logWaitAdd(item.getTitle(), person));
+            return false;
+        } finally {
+            unlockItem(stripe);
+        }
+    }
+
+    // deliver the videos in stock for a stock item to the people at the
+    // beginning of its waiting list; returns those people in order
+    public Object[] deliverStockItem(StockItem item) {
+        ReentrantLock stripe = lockListedItem(item);
+        try {
+            preserve(item);
+            int have = item.getHave();
+            Object[] people = item.getWaitingList().drain(have);
+            if (people.length > 0) {
+                item.setHave(have - people.length);
+                reclassify(item);
+                log(j -> j.logWaitDrain(item.getTitle(), people.length));
+                log(j -> j.logSetHave(item.getTitle(), have - people.length));
+            }
+            return people;
+        } finally {
+            unlockItem(stripe);
+        }
+    }
+
+    // bring the have value of every title that is below its want value
+    // up to the want value; returns the order lines in title order
+    public OrderLine[] purchaseOrder() {
+        return purchaseOrder(null);
+    }
+
+    // as purchaseOrder(), with the work split across the engine's threads
+    public OrderLine[] purchaseOrder(OrderEngine engine) {
+        long start = Metrics.ENABLED ? System.nanoTime() : 0;
+        try {
+            return adjustHaveToWant(true, engine);
+        } finally {
+            if (Metrics.ENABLED) PURCHASE_LATENCY.recordSince(start);
+        }
+    }
+
+    // bring the have value of every title that is above its want value
+    // down to the want value; returns the order lines in title order
+    public OrderLine[] returnOrder() {
+        return returnOrder(null);
+    }
+
+    // as returnOrder(), with the work split across the engine's threads
+    public OrderLine[] returnOrder(OrderEngine engine) {
+        long start = Metrics.ENABLED ? System.nanoTime() : 0;
+        try {
+            return adjustHaveToWant(false, engine);
+        } finally {
+            if (Metrics.ENABLED) RETURN_LATENCY.recordSince(start);
+        }
+    }
+
+    // Visit only the titles in the deficit (or surplus) set; each one
+    // leaves the set as its have value is adjusted. With an engine, the
+    // titles are copied to an array in title order and adjusted range by
+    // range in parallel; each title is still changed under its stripe.
+    // In a columnar inventory the titles' slots are changed the same way,
+    // unless the set holds most of the titles (see adjustColumns).
+    private OrderLine[] adjustHaveToWant(boolean purchase, OrderEngine engine) {
+        ConcurrentSkipListSet<StockItem> titles = purchase ? deficit : surplus;
+        if (columns != null && holdsMostTitles(titles)) {
+            return adjustColumns(purchase, engine);
+        }
+
+        lockShared();
+        try {
+            if (engine == null) {
+                return adjustRange(titles, purchase);
+            }
+            StockItem[] titleArray = titles.toArray(new StockItem[0]);
+            return engine.run(titleArray.length, (from, to) ->
+                    adjustRange(Arrays.asList(titleArray).subList(from, to),
+                                purchase));
+        } finally {
+            unlockShared();
+        }
+    }
+
+    // adjust the have values of some titles, in order, for adjustHaveToWant
+    private OrderLine[] adjustRange(Iterable<StockItem> titles, boolean purchase) {
+        ArrayList<OrderLine> lines = new ArrayList<>();
+
+        for (StockItem item : titles) {
+            ReentrantLock stripe = stripeFor(item);
+            stripe.lock();
+            try {
+                int want = item.getWant();
+                int difference = want - item.getHave();
+                if (purchase ? difference > 0 : difference < 0) {
+                    lines.add(new OrderLine(item.getTitle(),
+                                            Math.abs(difference)));
+                    preserve(item);
+                    item.setHave(want);
+                    reclassify(item);
+                    log(j -> j.logSetHave(item.getTitle(), want));
+                }
+            } finally {
+                stripe.unlock();
+            }
+        }
+        return lines.toArray(new OrderLine[0]);
+    }
+
+    // Bulk columnar version of adjustHaveToWant, for when the deficit (or
+    // surplus) set holds most of the titles: the order lines come from the
+    // set, then one pass over the columns adjusts every have value at
+    // once. The pass costs O(n) and locks out every other session, but
+    // runs as a vector loop, which beats locking and updating each of that
+    // many titles. With an engine, the lines are made in parallel; the
+    // write lock keeps the counts still meanwhile.
+    private OrderLine[] adjustColumns(boolean purchase, OrderEngine engine) {
+        ConcurrentSkipListSet<StockItem> titles = purchase ? deficit : surplus;
+        OrderLine[] lines;
+
+        lockStructure();
+        try {
+            if (engine == null) {
+                lines = linesFor(titles);
+            } else {
+                StockItem[] titleArray = titles.toArray(new StockItem[0]);
+                lines = engine.run(titleArray.length, (from, to) ->
+                        linesFor(Arrays.asList(titleArray).subList(from, to)));
+            }
+            for (StockItem item : titles) preserve(item);
+            if (purchase) columns.applyPurchase();
+            else columns.applyReturn();
+            titles.clear();
+        } finally {
+            unlockStructure();
+        }
+        return lines;
+    }
+
+    // tell whether a deficit or surplus set holds more than half of the
+    // titles, counting no further than that; the count is a hint taken
+    // without locks
+    private boolean holdsMostTitles(Iterable<StockItem> titles) {
+        int half = items.size() / 2;
+        int count = 0;
+        for (StockItem item : titles) {
+            if (++count > half) return true;
+        }
+        return false;
+    }
+
+    // order lines for some titles, in order, for adjustColumns
+    private OrderLine[] linesFor(Iterable<StockItem> titles) {
+        ArrayList<OrderLine> lines = new ArrayList<>();
+
+        for (StockItem item : titles) {
+            int want = item.getWant();
+            lines.add(new OrderLine(item.getTitle(),
+                                    Math.abs(want - item.getHave())));
+            log(j -> j.logSetHave(item.getTitle(), want));
+        }
+        return lines.toArray(new OrderLine[0]);
+    }
+
+    // Totals. They take only the structure read lock, which keeps titles
+    // (and column slots) from being added or removed, and not the stripes,
+    // so they do not hold up other sessions. Counts that change meanwhile
+    // may be summed before or after the change, each on its own: a total
+    // taken while other sessions sell or deliver is approximate.
+
+    // total number of videos in stock
+    public long totalHave() {
+        lockShared();
+        try {
+            if (columns != null) return columns.totalHave();
+            long total = 0;
+            for (Object dataItem : items) total += ((StockItem) dataItem).getHave();
+            return total;
+        } finally {
+            unlockShared();
+        }
+    }
+
+    // total number of videos that should be in stock
+    public long totalWant() {
+        lockShared();
+        try {
+            if (columns != null) return columns.totalWant();
+            long total = 0;
+            for (Object dataItem : items) total += ((StockItem) dataItem).getWant();
+            return total;
+        } finally {
+            unlockShared();
+        }
+    }
+
+    // total number of videos missing from titles that have too few
+    public long totalDeficit() {
+        lockShared();
+        try {
+            if (columns != null) return columns.totalDeficit();
+            long total = 0;
+            for (Object dataItem : items) {
+                StockItem item = (StockItem) dataItem;
+                total += Math.max(item.getWant() - item.getHave(), 0);
+            }
+            return total;
+        } finally {
+            unlockShared();
+        }
+    }
+
+    // move the have and want values of all titles out of the columns, so
+    // stock items still referenced elsewhere keep their values
+    private void detachAll() {
+        if (columns != null) {
+            for (StockItem item : titleIndex.values()) item.detach();
+            columns.clear();
+        }
+    }
+
+    /**
+     * Checks that the indexes agree with the title list: every title is
+     * found by findStockItem, and is in the deficit (or surplus) set
+     * exactly when its have value is below (or above) its want value, as
+     * reclassify would put it. Meant for stress tests; holds the structure
+     * lock while it checks.
+     * @return a description of each disagreement; empty if there are none
+     */
+    public List<String> checkIndexes() {
+        List<String> problems = new ArrayList<>();
+        lockStructure();
+        try {
+            int deficits = 0;
+            int surpluses = 0;
+            for (Object dataItem : items) {
+                StockItem item = (StockItem) dataItem;
+                int difference = item.getWant() - item.getHave();
+                if (titleIndex.get(item.getSortKey()) != item) {
+                    problems.add("\"" + item.getTitle() + "\" is not in the title index");
+                }
+                if (deficit.contains(item) != difference > 0) {
+                    problems.add("\"" + item.getTitle() + "\" (have " + item.getHave() +
+                                 ", want " + item.getWant() + ") " +
+                                 (difference > 0 ? "is missing from" : "is wrongly in") +
+                                 " the deficit set");
+                }
+                if (surplus.contains(item) != difference < 0) {
+                    problems.add("\"" + item.getTitle() + "\" (have " + item.getHave() +
+                                 ", want " + item.getWant() + ") " +
+                                 (difference < 0 ? "is missing from" : "is wrongly in") +
+                                 " the surplus set");
+                }
+                if (difference > 0) deficits++;
+                if (difference < 0) surpluses++;
+            }
+            if (titleIndex.size() != items.size()) {
+                problems.add("the title index has " + titleIndex.size() +
+                             " titles, the title list " + items.size());
+            }
+            if (deficit.size() != deficits) {
+                problems.add("the deficit set has " + deficit.size() +
+                             " titles, " + deficits + " are short");
+            }
+            if (surplus.size() != surpluses) {
+                problems.add("the surplus set has " + surplus.size() +
+                             " titles, " + surpluses + " are over stocked");
+            }
+        } finally {
+            unlockStructure();
+        }
+        return problems;
+    }
+
+    // bring the columns and indexes up to date with a stock item that was
+    // just added to the title list; called with the structure lock held
+    private void track(StockItem item) {
+        InventoryExport.Epoch epoch = exportEpoch;
+        if (epoch != null) epoch.titleAdded(item);
+        if (columns != null) item.attach(columns);
+        titleIndex.put(item.getSortKey(), item);
+        if (trigrams != null) trigrams.add(item);
+        reclassify(item);
+    }
+
+    // let a running export keep a copy of a stock item before its values
+    // or waiting list change, unless the item has left the title list, in
+    // which case the export has what it needs (see sortedRemove) and a
+    // copy would never be written or dropped; called with the item's
+    // stripe (or the structure write lock) held
+    private void preserve(StockItem item) {
+        InventoryExport.Epoch epoch = exportEpoch;
+        if (epoch != null && titleIndex.get(item.getSortKey()) == item) {
+            epoch.preserve(item);
+        }
+    }
+
+    // put a stock item in the deficit or surplus set, or neither, after
+    // its have or want value changed; called with the item's stripe (or
+    // the structure write lock) held
+    private void reclassify(StockItem item) {
+        int difference = item.getWant() - item.getHave();
+        if (difference > 0) {
+            surplus.remove(item);
+            deficit.add(item);
+        } else if (difference < 0) {
+            deficit.remove(item);
+            surplus.add(item);
+        } else {
+            deficit.remove(item);
+            surplus.remove(item);
+        }
     }
 
     //////////////////////////
@@ -88,46 +975,90 @@ public class Inventory extends SortedList
     // the person wants is sold out)
     public void addToWaitingList(String title, Person person) {
         StockItem item = findStockItem(title);
-        WaitingList aList = item.getWaitingList();
-        aList.addLast(person); // add a person at the end of the list
+        ReentrantLock stripe = lockListedItem(item);
+        try {
+            preserve(item);
+            WaitingList aList = item.getWaitingList();
+            aList.addLast(person); // add a person at the end of the list
+            log(j -> j.logWaitAdd(item.getTitle(), person));
+        } finally {
+            unlockItem(stripe);
+        }
     }
 
     // delete the person at the beginning of the waiting list for a
     // specified title (when a video is delivered to the person)
     public Person deleteFromWaitingList(String title) {
         StockItem item = findStockItem(title);
-        WaitingList aList = item.getWaitingList();
         Person aPerson = null;
 
-        if (aList.size() > 0) {
-            aPerson = (Person) aList.get(1);
-            aList.removeFirst(); // remove the first person on the waiting list
+        ReentrantLock stripe = lockListedItem(item);
+        try {
+            WaitingList aList = item.getWaitingList();
+            if (aList.size() > 0) {
+                preserve(item);
+                aPerson = (Person) aList.get(1);
+                aList.removeFirst(); // remove the first person on the waiting list
+                log(j -> j.logWaitDrain(item.getTitle(), 1));
+            }
+        } finally {
+            unlockItem(stripe);
         }
         return aPerson;
     }
 
+    // delete up to n people from the beginning of the waiting list for a
+    // stock item (when n videos are delivered) and return them in order
+    public Object[] drainWaitingList(StockItem item, int n) {
+        ReentrantLock stripe = lockListedItem(item);
+        try {
+            preserve(item);
+            Object[] people = item.getWaitingList().drain(n);
+            if (people.length > 0) {
+                log(j -> j.logWaitDrain(item.getTitle(), people.length));
+            }
+            return people;
+        } finally {
+            unlockItem(stripe);
+        }
+    }
+
     // display the names on a waiting list for a specified title
     public void displayWaitingList(String title) {
-        StockItem item = findStockItem(title);
-        displayWaitingList(item);
+        displayWaitingList(title, System.out);
     }
 
-    // display the names on a waiting list for a stock item
-    private void displayWaitingList(StockItem item) {
-        WaitingList aList = item.getWaitingList();
-        Object dataItem;
+    // display the names on a waiting list for a specified title to a stream
+    public void displayWaitingList(String title, PrintStream out) {
+        ReportWriter report = new ReportWriter(out);
+        displayWaitingList(title, report);
+        report.flush();
+    }
 
-        System.out.print(aList.size() + " person(s) on waiting list: ");
+    // display the names on a waiting list for a specified title to a report
+    public void displayWaitingList(String title, ReportWriter out) {
+        StockItem item = findStockItem(title);
+        Object[] waiting;
+
+        ReentrantLock stripe = lockItem(item);
         try {
-            for (int index = 1; index < aList.size(); index++){
-                dataItem = aList.get(index);
-                System.out.print(dataItem + ", ");
+            waiting = item.getWaitingList().toArray();
+        } finally {
+            unlockItem(stripe);
+        }
+        displayWaitingList(waiting, out);
+    }
+
+    // display the names on a waiting list, given as an array
+    private void displayWaitingList(Object[] aList, ReportWriter out) {
+        out.print(aList.length).print(" person(s) on waiting list: ");
+        if (aList.length > 0) {
+            out.print(aList[0]);
+            for (int index = 1; index < aList.length; index++) {
+                out.print(", ").print(aList[index]);
             }
-            if (aList.size() > 0) {
-                dataItem = aList.get(aList.size());
-                System.out.println(dataItem + ".");
-            } else System.out.println("list is empty");
-        } catch(ListException e) {}
+            out.println(".");
+        } else out.println("list is empty");
     }
 
     ///////////////////////////
@@ -140,17 +1071,21 @@ public class Inventory extends SortedList
      * @param person the person to be added
      */
     public void addToCustomerList(Person person) {
-        // Create a flag to see if the person already exists on the customer list.
-        boolean isAlreadyCustomer = false;
+        lockCustomers();
+        try {
+            // Check if the person already exists on the customer list.
+            boolean isAlreadyCustomer = isCustomer(person);
 
-        // Loop through every customer on the customer list.
-        for(int i = 1; i <= customerList.size(); i++) {
-            // Check if the customer already exists on the customer list.
-            if(person.compareTo((Person) customerList.get(i)) == 0) isAlreadyCustomer = true;
+            // Add the customer to the customer list if they are not already a customer.
+            if(!isAlreadyCustomer) {
+                customerList.sortedAdd(person);
+                InventoryExport.Epoch epoch = exportEpoch;
+                if (epoch != null) epoch.customerAdded(person);
+                log(j -> j.logCustomerAdd(person));
+            }
+        } finally {
+            unlockCustomers();
         }
-
-        // Add the customer to the customer list if they are not already a customer.
-        if(!isAlreadyCustomer) customerList.sortedAdd(person);
     }
 
     /**
@@ -159,99 +1094,928 @@ public class Inventory extends SortedList
      * @param person the person to be removed
      */
     public void deleteFromCustomerList(Person person) {
-        // Create a flag to see if the person already exists on the customer list.
-        boolean isAlreadyCustomer = false;
+        deleteFromCustomerList(person, System.out);
+    }
 
-        // Loop through every customer on the customer list.
-        for(int i = 1; i <= customerList.size(); i++) {
-            // Check if the customer already exists on the customer list.
-            if(person.compareTo((Person) customerList.get(i)) == 0) isAlreadyCustomer = true;
-        }
+    /**
+     * Deletes the specified person from the customer list if they are
+     * currently on the customer list, reporting the result to a stream.
+     * @param person the person to be removed
+     * @param out the stream the result is printed to
+     */
+    public void deleteFromCustomerList(Person person, PrintStream out) {
+        // Remove the person from the customer list if they are on it.
+        boolean isAlreadyCustomer = removeFromCustomerList(person);
 
-        // Check if the customer exists.
+        // Check if the customer existed.
         if(isAlreadyCustomer) {
-            // Remove the customer from the customer list.
-            customerList.sortedRemove(person);
-
             // Inform the user that the customer has been removed.
-            System.out.printf("-- Customer (%s) has been removed!\n", person);
+            out.printf("-- Customer (%s) has been removed!\n", person);
         } else {
             // If the customer was not already on the list, print a message saying that they were not.
-            System.out.printf("** Customer (%s) not found!\n", person);
+            out.printf("** Customer (%s) not found!\n", person);
         }
     }
 
+    /**
+     * Removes a person from the customer list without printing anything.
+     * @param person the person to be removed
+     * @return true if the person was on the customer list
+     */
+    boolean removeFromCustomerList(Person person) {
+        lockCustomers();
+        try {
+            // Check if the person exists on the customer list.
+            if(!isCustomer(person)) return false;
+
+            // Remove the customer from the customer list.
+            InventoryExport.Epoch epoch = exportEpoch;
+            if (epoch != null) epoch.customerRemoved(person);
+            customerList.sortedRemove(person);
+            log(j -> j.logCustomerDelete(person));
+            return true;
+        } finally {
+            unlockCustomers();
+        }
+    }
+
+    /**
+     * Checks whether a person is on the customer list. The list is sorted,
+     * so the person can only be at the position where they would be
+     * inserted; with the default skip list this is O(log n).
+     * @param person the person to look for
+     * @return true if a customer with the same name (as defined by
+     *         Person.compareTo) is on the list
+     */
+    private boolean isCustomer(Person person) {
+        // Find the position where the person belongs in the customer list.
+        int position = customerList.locateIndex(person);
+
+        // Check the customer at that position, if there is one.
+        return position <= customerList.size() &&
+               person.compareTo(customerList.get(position)) == 0;
+    }
+
     /**
      * Deletes all entries from the customer list.
      */
     public void deleteAllFromCustomerList() {
-        customerList.removeAll();
+        lockCustomers();
+        try {
+            exportCustomersRemoved();
+            customerList.removeAll();
+            log(j -> j.logClearCustomers());
+        } finally {
+            unlockCustomers();
+        }
     }
 
     /**
      * Displays the names on the customer list.
      */
     public void displayCustomerList() {
+        displayCustomerList(System.out);
+    }
+
+    /**
+     * Displays the names on the customer list to a stream.
+     * @param out the stream the names are printed to
+     */
+    public void displayCustomerList(PrintStream out) {
+        ReportWriter report = new ReportWriter(out);
+        displayCustomerList(report);
+        report.flush();
+    }
+
+    /**
+     * Gets a page of the customer list.
+     * @param fromLastName the page starts at the first customer whose last
+     *        name is not before this one (ignoring case); null to start at
+     *        the first customer
+     * @param n the largest number of customers on the page
+     * @return the page
+     */
+    public Page<Person> customerPage(String fromLastName, int n) {
+        lockCustomers();
+        try {
+            return page(customerList, fromLastName == null ? null
+                                      : new Person("", fromLastName),
+                        false, n, CUSTOMER_TOKEN);
+        } finally {
+            unlockCustomers();
+        }
+    }
+
+    /**
+     * Gets the page of the customer list that follows another page.
+     * @param token the token returned with the other page
+     * @param n the largest number of customers on the page
+     * @return the page
+     * @throws IllegalArgumentException if token is not a customer page
+     *         token
+     */
+    public Page<Person> nextCustomerPage(String token, int n) {
+        String[] key = decodeToken(token, CUSTOMER_TOKEN, 2);
+        lockCustomers();
+        try {
+            return page(customerList, new Person(key[1], key[0]), true, n,
+                        CUSTOMER_TOKEN);
+        } finally {
+            unlockCustomers();
+        }
+    }
+
+    /**
+     * Displays a page of the customer list to a stream.
+     * @param page the page
+     * @param out the stream the names are printed to
+     */
+    public void displayCustomerList(Page<Person> page, PrintStream out) {
+        ReportWriter report = new ReportWriter(out);
+        displayCustomerList(page, report);
+        report.flush();
+    }
+
+    /**
+     * Displays a page of the customer list to a report.
+     * @param page the page
+     * @param out the report the names are written to
+     */
+    public void displayCustomerList(Page<Person> page, ReportWriter out) {
+        List<Person> customers = page.getItems();
+        out.print(customers.size()).print(" person(s) on this page of the customer list: ");
+        if (customers.isEmpty()) {
+            out.println("no more customers");
+            return;
+        }
+        for (int i = 0; i < customers.size(); i++) {
+            if (i > 0) out.print(", ");
+            out.print(customers.get(i));
+        }
+        out.println(".");
+    }
+
+    /**
+     * Displays the names on the customer list to a report.
+     * @param out the report the names are written to
+     */
+    public void displayCustomerList(ReportWriter out) {
+        // Copy the customer list, so it is not locked while printing.
+        Object[] customerArray;
+        lockCustomers();
+        try {
+            customerArray = customerList.toArray();
+        } finally {
+            unlockCustomers();
+        }
+
         // Store the number of people on the customer list.
-        int customers = customerList.size();
+        int customers = customerArray.length;
 
         // Print out the number of people on the customer list.
-        System.out.printf("%d person(s) on the customer list: ", customers);
+        out.print(customers).print(" person(s) on the customer list: ");
 
         // Check if the customer list is empty.
         if(customers == 0) {
             // Print out a message saying the customer list is empty.
-            System.out.println("list is empty");
+            out.println("list is empty");
 
             // Exit the method.
             return;
         }
 
         // Loop through every customer on the customer list.
-        for(int i = 1; i <= customers; i++) {
+        boolean first = true;
+        for(Object customer : customerArray) {
             // Print a ", " before the customers name if this is not the first customer.
-            if(i != 1) System.out.print(", ");
-
-            // Get the current customer.
-            Person customer = (Person) customerList.get(i);
+            if(!first) out.print(", ");
+            first = false;
 
             // Print the customer's name.
-            System.out.print(customer);
+            out.print(customer);
         }
 
         // Print a period and new-line character after the customer's names.
-        System.out.println(".");
+        out.println(".");
+    }
+
+    /////////
+    // Paging
+    /////////
+
+    // Kinds of page token, and how each encodes the key of the last item
+    // on its page.
+    private static final char TITLE_TOKEN = 'T';
+    private static final char CUSTOMER_TOKEN = 'C';
+
+    // Up to n items of a sorted list, starting at the first item not less
+    // than start (greater than start, if exclusive), or at the first item
+    // if start is null. locateIndex finds the start and the items are read
+    // from there, so this is O(log n + N) in the skip lists. Called with
+    // the lock of the list held.
+    @SuppressWarnings("unchecked")
+    private static <T> Page<T> page(SortedListInterface list, Comparable start,
+                                    boolean exclusive, int n, char kind) {
+        if (n < 1) {
+            throw new IllegalArgumentException("page size must be positive");
+        }
+        Iterator<Object> iterator = list.iterator(start == null ? 1
+                                                  : list.locateIndex(start));
+        ArrayList<T> pageItems = new ArrayList<>(Math.min(n, 1024));
+        boolean more = false;
+        while (iterator.hasNext()) {
+            Object dataItem = iterator.next();
+            if (exclusive && start.compareTo(dataItem) == 0) continue;
+            if (pageItems.size() == n) {
+                more = true;
+                break;
+            }
+            pageItems.add((T) dataItem);
+        }
+        return new Page<>(pageItems,
+                          more ? tokenFor(kind, pageItems.get(n - 1)) : null);
+    }
+
+    // a token holding the kind and the key of an item, as URL-safe base64
+    // of the kind and the key fields, separated by newlines
+    private static String tokenFor(char kind, Object dataItem) {
+        String key;
+        if (kind == TITLE_TOKEN) {
+            key = ((StockItem) dataItem).getTitle();
+        } else {
+            Person person = (Person) dataItem;
+            key = person.getLastName() + "\n" + person.getFirstName();
+        }
+        byte[] bytes = (kind + "\n" + key).getBytes(StandardCharsets.UTF_8);
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(bytes);
+    }
+
+    // the key fields of a token of the given kind
+    private static String[] decodeToken(String token, char kind, int fields) {
+        String[] parts = new String[0];
+        if (token != null) {
+            try {
+                byte[] bytes = Base64.getUrlDecoder().decode(token);
+                parts = new String(bytes, StandardCharsets.UTF_8).split("\n", -1);
+            } catch (IllegalArgumentException e) {
+                // not base64; reported below
+            }
+        }
+        if (parts.length != fields + 1 || !parts[0].equals(String.valueOf(kind))) {
+            throw new IllegalArgumentException("Invalid page token: " + token);
+        }
+        return Arrays.copyOfRange(parts, 1, parts.length);
+    }
+
+    //////////////
+    // Bulk Import
+    //////////////
+
+    /**
+     * Adds the titles in a CSV file (see Csv) to the inventory. Each row
+     * holds a title, its want value and, optionally, its have value; a
+     * first row that names the columns (title,want,have) is skipped. A row
+     * is rejected if it cannot be read, if a value is not a number of at
+     * least 0, or if its title equals one in an earlier row or one already
+     * in the inventory, ignoring case as StockItem.compareTo does.
+     *
+     * The rows are read and sorted without holding any lock, so other
+     * sessions carry on meanwhile. Under the structure lock, the new
+     * titles are then merged with the existing ones and appended to the
+     * title list in a single pass: O(n log n) in all instead of a search
+     * and a sortedAdd per title. When every new title sorts after the
+     * existing ones, only the new titles are appended.
+     * @param file the CSV file, in UTF-8
+     * @return the number of titles added, and why the other rows were not
+     * @throws IOException if the file cannot be read
+     */
+    public ImportResult importCsv(Path file) throws IOException {
+        long start = Metrics.ENABLED ? System.nanoTime() : 0;
+        TreeMap<Integer, String> rejected = new TreeMap<>();
+        ArrayList<ImportRow> rows = new ArrayList<>();
+
+        try (BufferedReader in = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            String line;
+            int lineNum = 0;
+            while ((line = in.readLine()) != null) {
+                lineNum++;
+                if (lineNum == 1 && line.startsWith("\uFEFF")) {
+                    line = line.substring(1); // byte order mark
+                }
+                if (line.trim().isEmpty()) continue;
+
+                String[] fields = Csv.split(line);
+                if (lineNum == 1 && fields != null && fields.length > 1 &&
+                        fields[0].equalsIgnoreCase("title") &&
+                        fields[1].equalsIgnoreCase("want")) {
+                    continue; // column names
+                }
+                StockItem item = importItem(fields, lineNum, rejected);
+                if (item != null) {
+                    rows.add(new ImportRow(item, lineNum));
+                }
+            }
+        }
+
+        // sort by title; the sort is stable, so of several rows with the
+        // same title the first one in the file comes first and is kept
+        rows.sort(null);
+        StockItem[] newItems = new StockItem[rows.size()];
+        int[] lines = new int[rows.size()];
+        int count = 0;
+        for (ImportRow row : rows) {
+            if (count > 0 && newItems[count - 1].compareTo(row.item) == 0) {
+                rejected.put(row.line, "duplicate of line " + lines[count - 1] +
+                                       " (\"" + row.item.getTitle() + "\")");
+            } else {
+                newItems[count] = row.item;
+                lines[count++] = row.line;
+            }
+        }
+        rows = null;
+
+        int imported = 0;
+        lockStructure();
+        try {
+            Object[] existing = new Object[0];
+            if (count > 0 && !items.isEmpty() &&
+                    ((StockItem) items.get(items.size())).compareTo(newItems[0]) >= 0) {
+                existing = items.toArray();
+                items.removeAll();
+            }
+
+            // merge the existing titles, which stay as they are, with the
+            // new ones
+            int i = 0;
+            int k = 0;
+            while (i < existing.length || k < count) {
+                int c = i == existing.length ? 1
+                      : k == count ? -1
+                      : ((StockItem) existing[i]).compareTo(newItems[k]);
+                if (c <= 0) {
+                    items.sortedAppend((StockItem) existing[i++]);
+                    if (c < 0) continue;
+                }
+                StockItem item = newItems[k];
+                if (c == 0) {
+                    rejected.put(lines[k], "already in the inventory (\"" +
+                                           item.getTitle() + "\")");
+                } else {
+                    items.sortedAppend(item);
+                    track(item);
+                    log(j -> j.logPutItem(item));
+                    imported++;
+                }
+                k++;
+            }
+        } finally {
+            unlockStructure();
+            if (Metrics.ENABLED) IMPORT_LATENCY.recordSince(start);
+        }
+
+        List<String> messages = new ArrayList<>(rejected.size());
+        for (Map.Entry<Integer, String> entry : rejected.entrySet()) {
+            messages.add("line " + entry.getKey() + ": " + entry.getValue());
+        }
+        return new ImportResult(imported, messages);
+    }
+
+    // The stock item described by the fields of a CSV row, or null if the
+    // row is rejected, after recording why.
+    private static StockItem importItem(String[] fields, int lineNum,
+                                        Map<Integer, String> rejected) {
+        if (fields == null) {
+            rejected.put(lineNum, "unclosed quote");
+            return null;
+        }
+        if (fields.length < 2 || fields.length > 3) {
+            rejected.put(lineNum, "expected title,want or title,want,have " +
+                                  "but found " + fields.length + " field(s)");
+            return null;
+        }
+        if (fields[0].isEmpty()) {
+            rejected.put(lineNum, "no title");
+            return null;
+        }
+        int want = importCount(fields[1]);
+        if (want < 0) {
+            rejected.put(lineNum, "invalid want value \"" + fields[1] + "\"");
+            return null;
+        }
+        int have = fields.length == 3 ? importCount(fields[2]) : 0;
+        if (have < 0) {
+            rejected.put(lineNum, "invalid have value \"" + fields[2] + "\"");
+            return null;
+        }
+        StockItem item = new StockItem(fields[0]);
+        item.setWant(want);
+        item.setHave(have);
+        return item;
+    }
+
+    // a have or want value read from a CSV field, or -1 if it is not a
+    // number of at least 0
+    private static int importCount(String field) {
+        try {
+            return Integer.parseInt(field);
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    // A stock item read from a CSV file, and the line it came from;
+    // ordered by title. The sort key is kept here so that the sort does
+    // not have to go through the item for it.
+    private static class ImportRow implements Comparable<ImportRow> {
+        final StockItem item;
+        final String key;
+        final int line;
+
+        ImportRow(StockItem item, int line) {
+            this.item = item;
+            this.key = item.getSortKey();
+            this.line = line;
+        }
+
+        public int compareTo(ImportRow other) {
+            return key.compareTo(other.key);
+        }
+    }
+
+    //////////////
+    // Bulk Export
+    //////////////
+
+    /**
+     * Writes the titles with their have and want values and waiting
+     * lists, and the customers, to a CSV or JSON Lines file (see
+     * InventoryExport). The file shows the inventory at a single moment,
+     * when the export began: changes wait only while it begins, then go
+     * on while the file is written, the first change to each title or
+     * customer that the export has not yet got to keeping a copy for it.
+     * One export runs at a time; another waits for it to finish.
+     * @param file the file to write; it is replaced when the export is done
+     * @param format the format to write it in
+     * @return the number of records written
+     * @throws IOException if the file cannot be written
+     */
+    public long exportInventory(Path file, ExportFormat format) throws IOException {
+        return export(file, format, null);
+    }
+
+    /**
+     * Runs exportInventory on a new thread. Returns as soon as the export
+     * has begun, so the file shows every change made before this call and
+     * none made after it, and the caller goes on while the file is
+     * written.
+     * @param file the file to write; it is replaced when the export is done
+     * @param format the format to write it in
+     * @return a future that completes with the number of records written,
+     *         or with the exception that stopped the export
+     */
+    public CompletableFuture<Long> exportInventoryAsync(Path file, ExportFormat format) {
+        CompletableFuture<Long> result = new CompletableFuture<>();
+        CompletableFuture<Void> begun = new CompletableFuture<>();
+        EXPORTER.execute(() -> {
+            try {
+                result.complete(export(file, format, begun));
+            } catch (Throwable e) {
+                result.completeExceptionally(e);
+            } finally {
+                begun.complete(null);
+            }
+        });
+        begun.join();
+        return result;
+    }
+
+    // Export, completing begun (if not null) once the epoch has begun.
+    // Every change is locked out while the epoch is set, so each one is
+    // either made before and written, or made after and kept from the
+    // file by the epoch.
+    private long export(Path file, ExportFormat format,
+                        CompletableFuture<Void> begun) throws IOException {
+        long start = Metrics.ENABLED ? System.nanoTime() : 0;
+        exportLock.lock();
+        try {
+            InventoryExport.Epoch epoch = new InventoryExport.Epoch();
+            lockSnapshot();
+            exportEpoch = epoch;
+            unlockSnapshot();
+            if (begun != null) begun.complete(null);
+            try {
+                return InventoryExport.write(this, epoch, file, format);
+            } finally {
+                exportEpoch = null;
+            }
+        } finally {
+            exportLock.unlock();
+            if (Metrics.ENABLED) EXPORT_LATENCY.recordSince(start);
+        }
+    }
+
+    // Up to n titles of an export, following the last ones it wrote, as
+    // they were when it began; none once it has written them all. Titles
+    // deleted since come from the epoch's removed map, in title order with
+    // the others, and titles inserted since are skipped. The page is read
+    // under the structure read lock, so no title is inserted or deleted
+    // meanwhile, and each title is copied under its stripe.
+    List<InventoryExport.Title> exportTitles(InventoryExport.Epoch epoch, int n) {
+        ArrayList<InventoryExport.Title> page = new ArrayList<>(n);
+        lockShared();
+        try {
+            StockItem cursor = epoch.titleCursor;
+            Iterator<Object> live = items.iterator(cursor == null ? 1
+                                                   : items.locateIndex(cursor));
+            StockItem next = nextExported(live, cursor, epoch.added);
+            while (page.size() < n) {
+                Map.Entry<StockItem, InventoryExport.Title> removed =
+                        epoch.removed.firstEntry();
+                if (removed != null &&
+                        (next == null || removed.getKey().compareTo(next) <= 0)) {
+                    epoch.removed.pollFirstEntry();
+                    page.add(removed.getValue());
+                    epoch.titleCursor = removed.getKey();
+                } else if (next != null) {
+                    ReentrantLock stripe = stripeFor(next);
+                    stripe.lock();
+                    try {
+                        InventoryExport.Title saved = epoch.saved.remove(next);
+                        page.add(saved != null ? saved : new InventoryExport.Title(next));
+                        epoch.titleCursor = next;
+                    } finally {
+                        stripe.unlock();
+                    }
+                    next = nextExported(live, cursor, epoch.added);
+                } else {
+                    break;
+                }
+            }
+        } finally {
+            unlockShared();
+        }
+        return page;
+    }
+
+    // Up to n customers of an export, as exportTitles, under customerLock.
+    List<Person> exportCustomers(InventoryExport.Epoch epoch, int n) {
+        ArrayList<Person> page = new ArrayList<>(n);
+        lockCustomers();
+        try {
+            Person cursor = epoch.customerCursor;
+            Iterator<Object> live = customerList.iterator(
+                    cursor == null ? 1 : customerList.locateIndex(cursor));
+            Person next = nextExported(live, cursor, epoch.addedCustomers);
+            while (page.size() < n) {
+                Person removed = epoch.removedCustomers.isEmpty() ? null
+                               : epoch.removedCustomers.first();
+                if (removed != null && (next == null || removed.compareTo(next) <= 0)) {
+                    epoch.removedCustomers.pollFirst();
+                    page.add(removed);
+                    epoch.customerCursor = removed;
+                } else if (next != null) {
+                    page.add(next);
+                    epoch.customerCursor = next;
+                    next = nextExported(live, cursor, epoch.addedCustomers);
+                } else {
+                    break;
+                }
+            }
+        } finally {
+            unlockCustomers();
+        }
+        return page;
+    }
+
+    // the next item of a list that an export writes: after the cursor it
+    // started the page at, and not added since the export began
+    @SuppressWarnings("unchecked")
+    private static <T> T nextExported(Iterator<Object> live, Comparable cursor,
+                                      Set<T> added) {
+        while (live.hasNext()) {
+            T dataItem = (T) live.next();
+            if ((cursor == null || cursor.compareTo(dataItem) < 0) &&
+                    !added.contains(dataItem)) {
+                return dataItem;
+            }
+        }
+        return null;
+    }
+
+    // tell a running export that every title is about to be removed;
+    // called with the structure write lock held
+    private void exportTitlesRemoved() {
+        InventoryExport.Epoch epoch = exportEpoch;
+        if (epoch != null) {
+            for (Object dataItem : items) epoch.titleRemoved((StockItem) dataItem);
+        }
+    }
+
+    // the same for every customer; called with customerLock or the
+    // structure write lock held
+    private void exportCustomersRemoved() {
+        InventoryExport.Epoch epoch = exportEpoch;
+        if (epoch != null) {
+            for (Object customer : customerList) epoch.customerRemoved((Person) customer);
+        }
     }
 
     //////////////
     // File Access
     //////////////
 
+    // the title index is not serialized; rebuild it from the title list
+    private void readObject(ObjectInputStream in)
+            throws IOException, ClassNotFoundException {
+        in.defaultReadObject();
+        structureLock = new ReentrantReadWriteLock();
+        stripes = newStripes();
+        customerLock = new ReentrantLock();
+        exportLock = new ReentrantLock();
+        titleIndex = new ConcurrentHashMap<>();
+        deficit = new ConcurrentSkipListSet<>();
+        surplus = new ConcurrentSkipListSet<>();
+        for (Object dataItem : items) {
+            StockItem item = (StockItem) dataItem;
+            titleIndex.put(item.getSortKey(), item);
+            reclassify(item);
+        }
+    }
+
+    // data file used by saveInventory and restoreInventory
+    private static final Path DATA_FILE = Paths.get("inventory.dat");
+
     // save the current inventory and associated waiting lists when
-    // porgram execution terminates
+    // porgram execution terminates; with a journal open this is a
+    // checkpoint: the data file takes over the journaled changes and the
+    // journal is emptied
     public void saveInventory() {
+        saveInventory(DATA_FILE);
+    }
+
+    // save the inventory to a given data file (see saveInventory())
+    public void saveInventory(Path file) {
+        long start = Metrics.ENABLED ? System.nanoTime() : 0;
+        lockStructure();
         try {
-            FileOutputStream fos = new FileOutputStream("inventory.dat");
-            ObjectOutputStream oos = new ObjectOutputStream(fos);
-            oos.writeObject(this);
-            fos.close();
+            if (journal != null) {
+                journal.flush();
+                snapshotSequence = journal.lastSequence();
+            }
+            long written = InventorySnapshot.write(this, file);
+            if (Metrics.ENABLED) Metrics.SNAPSHOT_BYTES_WRITTEN.add(written);
+            if (journal != null) {
+                journal.truncate();
+            }
         } catch (Exception e) {
             System.out.println(e);
+        } finally {
+            unlockStructure();
+            if (Metrics.ENABLED) SAVE_LATENCY.recordSince(start);
         }
     }
 
     // restore the current inventory and associated waiting lists when
-    // program execution begins again
-    public SortedList restoreInventory() {
-        SortedList restoredInventory = null;
-        try {
-            FileInputStream fis = new FileInputStream("inventory.dat");
-            ObjectInputStream ois = new ObjectInputStream(fis);
-            Object o = ois.readObject();
-            restoredInventory = (SortedList) o;
+    // program execution begins again; the data is read into this
+    // inventory, so the lists chosen at construction are kept
+    public SortedListInterface restoreInventory() {
+        return restoreInventory(DATA_FILE);
+    }
+
+    // restore the inventory from a given data file (see restoreInventory())
+    public SortedListInterface restoreInventory(Path file) {
+        return restoreInventory(file, false);
+    }
+
+    // restore the inventory from a given data file; if lazy is true, only
+    // the customers and the titles with their have and want values are
+    // read before this returns, and each waiting list is read the first
+    // time it is used or by a warm-up thread in the background
+    public SortedListInterface restoreInventory(Path file, boolean lazy) {
+        SortedListInterface restoredInventory = null;
+        long start = Metrics.ENABLED ? System.nanoTime() : 0;
+        lockStructure();
+        try {
+            clear();
+            InventorySnapshot.read(file, this, lazy);
+            restoredInventory = this;
         } catch (Exception e) {
+            clear();
             System.out.println(e);
+        } finally {
+            unlockStructure();
+            if (Metrics.ENABLED) RESTORE_LATENCY.recordSince(start);
         }
         return restoredInventory;
     }
+
+    // empty both lists without logging to the journal
+    private void clear() {
+        exportTitlesRemoved();
+        exportCustomersRemoved();
+        items.removeAll();
+        detachAll();
+        titleIndex.clear();
+        trigrams = null;
+        deficit.clear();
+        surplus.clear();
+        customerList.removeAll();
+        snapshotSequence = 0;
+    }
+
+    //////////
+    // Journal
+    //////////
+
+    /**
+     * Opens the journal, applies the changes it holds that are newer than
+     * the restored data file, and logs every later change to it. Call after
+     * restoreInventory.
+     * @param file the journal file
+     * @param policy when journal writes are forced to the disk
+     * @param flushMillis longest time a change waits before it is written
+     * @param checkpointRecords number of journal records after which
+     *        checkpointIfDue saves the inventory
+     * @return the number of journal records applied
+     * @throws IOException if the journal cannot be opened or read
+     */
+    public int openJournal(Path file, Journal.SyncPolicy policy,
+                           long flushMillis, int checkpointRecords)
+            throws IOException {
+        lockStructure();
+        try {
+            closeJournal();
+            Journal newJournal = new Journal(file, policy, flushMillis);
+            int applied;
+            try {
+                applied = newJournal.replay(snapshotSequence, this);
+            } catch (IOException | RuntimeException e) {
+                newJournal.close();
+                throw e;
+            }
+            journal = newJournal;
+            this.checkpointRecords = checkpointRecords;
+            return applied;
+        } finally {
+            unlockStructure();
+        }
+    }
+
+    /**
+     * Saves the inventory if the journal has grown past the checkpoint
+     * size given to openJournal.
+     */
+    public void checkpointIfDue() {
+        checkpointIfDue(checkpointRecords);
+    }
+
+    /**
+     * Saves the inventory if the journal holds at least a given number of
+     * records.
+     * @param records the journal size that makes a checkpoint due
+     */
+    public void checkpointIfDue(int records) {
+        if (journal != null && journal.size() >= records) {
+            lockStructure();
+            try {
+                // another thread may have saved while we waited
+                if (journal != null && journal.size() >= records) {
+                    saveInventory();
+                }
+            } finally {
+                unlockStructure();
+            }
+        }
+    }
+
+    /**
+     * Writes any changes still waiting in the journal and closes it.
+     */
+    public void closeJournal() {
+        lockStructure();
+        try {
+            if (journal != null) {
+                try {
+                    journal.close();
+                } catch (IOException e) {
+                    System.out.println(e);
+                }
+                journal = null;
+            }
+        } finally {
+            unlockStructure();
+        }
+    }
+
+    // record a change in the journal, if one is open
+    private void log(JournalEntry entry) {
+        if (journal != null) {
+            try {
+                entry.writeTo(journal);
+            } catch (IOException e) {
+                System.out.println(e);
+            }
+        }
+    }
+
+    // a change to be written to the journal
+    private interface JournalEntry {
+        void writeTo(Journal journal) throws IOException;
+    }
+
+    // sequence number of the last journal record reflected in the data
+    // file; stored in and read from the file by InventorySnapshot
+    long getSnapshotSequence() {
+        return snapshotSequence;
+    }
+
+    void setSnapshotSequence(long sequence) {
+        snapshotSequence = sequence;
+    }
+
+    //////////
+    // Locking
+    //////////
+
+    private static ReentrantLock[] newStripes() {
+        ReentrantLock[] locks = new ReentrantLock[STRIPES];
+        for (int i = 0; i < STRIPES; i++) {
+            locks[i] = new ReentrantLock();
+        }
+        return locks;
+    }
+
+    // the stripe lock guarding a stock item's counts and waiting list
+    private ReentrantLock stripeFor(StockItem item) {
+        int h = item.getSortKey().hashCode();
+        return stripes[(h ^ (h >>> 16)) & (STRIPES - 1)];
+    }
+
+    private ReentrantLock lockItem(StockItem item) {
+        ReentrantLock stripe = stripeFor(item);
+        structureLock.readLock().lock();
+        stripe.lock();
+        return stripe;
+    }
+
+    // lockItem for an operation that changes the item: throws
+    // TitleRemovedException, holding no lock, if the item has left the
+    // title list, so the change does not put it back in the deficit or
+    // surplus set or in the journal. Titles leave the list only under the
+    // write lock, so the item stays in it until unlockItem.
+    private ReentrantLock lockListedItem(StockItem item) {
+        ReentrantLock stripe = lockItem(item);
+        if (titleIndex.get(item.getSortKey()) != item) {
+            unlockItem(stripe);
+            throw new TitleRemovedException(item.getTitle());
+        }
+        return stripe;
+    }
+
+    private void unlockItem(ReentrantLock stripe) {
+        stripe.unlock();
+        structureLock.readLock().unlock();
+    }
+
+    private void lockCustomers() {
+        structureLock.readLock().lock();
+        customerLock.lock();
+    }
+
+    private void unlockCustomers() {
+        customerLock.unlock();
+        structureLock.readLock().unlock();
+    }
+
+    private void lockShared() {
+        structureLock.readLock().lock();
+    }
+
+    private void unlockShared() {
+        structureLock.readLock().unlock();
+    }
+
+    // Lock out every change to the inventory, but not the readers that
+    // take only the structure read lock: the read lock, then every stripe,
+    // then the customer lock, which is the order the other methods take
+    // them in.
+    private void lockSnapshot() {
+        structureLock.readLock().lock();
+        for (ReentrantLock stripe : stripes) stripe.lock();
+        customerLock.lock();
+    }
+
+    private void unlockSnapshot() {
+        customerLock.unlock();
+        for (int i = STRIPES - 1; i >= 0; i--) stripes[i].unlock();
+        structureLock.readLock().unlock();
+    }
+
+    private void lockStructure() {
+        structureLock.writeLock().lock();
+    }
+
+    private void unlockStructure() {
+        structureLock.writeLock().unlock();
+    }
 }
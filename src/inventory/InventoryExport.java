@@ -0,0 +1,281 @@
+package inventory;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Writes the titles of an inventory, with their have and want values and
+ * waiting lists, and its customers to a file that other systems can read,
+ * in UTF-8. Titles come in title order, then the customers in name order.
+ *
+ * CSV (quoted as in Csv): a header line, then one record per line, the
+ * first field telling its kind. The people waiting for a title follow it,
+ * in the order they joined the waiting list:
+ * <pre>
+ *   record,title,have,want,first,last
+ *   title,Star Wars,1,3,,
+ *   waiting,Star Wars,,,Ada,Lovelace
+ *   customer,,,,Ada,Lovelace
+ * </pre>
+ * JSON Lines: one object per title and per customer:
+ * <pre>
+ *   {"type":"title","title":"Star Wars","have":1,"want":3,"waiting":[{"first":"Ada","last":"Lovelace"}]}
+ *   {"type":"customer","first":"Ada","last":"Lovelace"}
+ * </pre>
+ *
+ * The records are rendered into a ReportWriter on the file's channel as
+ * the lists are read, a page at a time (see Inventory.exportTitles), so
+ * the file is written in one pass and large chunks. The inventory keeps
+ * changing meanwhile; the file shows it as it was when the export began,
+ * from the copies its Epoch keeps of what changed since.
+ */
+class InventoryExport {
+
+    private static final String CSV_HEADER = "record,title,have,want,first,last";
+
+    // titles or customers read from the inventory at a time
+    static final int PAGE_SIZE = 256;
+
+    // A title as an export writes it: its have and want values and the
+    // people on its waiting list at one moment.
+    static class Title {
+        final String title;
+        final int have;
+        final int want;
+        final Object[] waiting;
+
+        // copy an item; called with its stripe or the structure lock held
+        Title(StockItem item) {
+            title = item.getTitle();
+            have = item.getHave();
+            want = item.getWant();
+            waiting = item.getWaitingList().toArray();
+        }
+    }
+
+    /**
+     * The state of a running export: how far it has got, and what it needs
+     * to write the inventory as it was when the export began. Until the
+     * export gets to a title, the first change to the title saves a copy
+     * of it, and deleting it keeps it in the removed map; titles inserted
+     * ahead of the export are left out. Customers are handled the same
+     * way. Once the export has passed a title or customer, changes to it
+     * keep nothing, and the export drops each copy as it writes it, so the
+     * memory used grows with the changes made during the export, not with
+     * the inventory.
+     *
+     * Inventory calls the methods that record a change just before making
+     * it, with the locks that the change holds: the title's stripe (saved
+     * is a concurrent map for that) or, to insert or delete a title, the
+     * structure write lock; customerLock or the write lock for customers.
+     * The export reads a page, and takes what it writes out of the epoch,
+     * with the structure read lock and the title's stripe, or with
+     * customerLock, so it never sees a change half made.
+     */
+    static class Epoch {
+        // the last title and the last customer written, or null; each
+        // title or customer is written before the cursor moves past it
+        volatile StockItem titleCursor;
+        Person customerCursor;
+
+        // copies of the titles changed since the export began, until they
+        // are written
+        final ConcurrentHashMap<StockItem, Title> saved = new ConcurrentHashMap<>();
+
+        // titles deleted since the export began, in title order, and the
+        // titles inserted since, until they are deleted again
+        final TreeMap<StockItem, Title> removed = new TreeMap<>();
+        final Set<StockItem> added = Collections.newSetFromMap(new IdentityHashMap<>());
+
+        // the same for customers
+        final TreeSet<Person> removedCustomers = new TreeSet<>();
+        final TreeSet<Person> addedCustomers = new TreeSet<>();
+
+        // tell whether the export has yet to get to a title
+        boolean ahead(StockItem item) {
+            StockItem cursor = titleCursor;
+            return cursor == null || item.compareTo(cursor) > 0;
+        }
+
+        boolean ahead(Person person) {
+            return customerCursor == null || person.compareTo(customerCursor) > 0;
+        }
+
+        // a title is about to change
+        void preserve(StockItem item) {
+            if (ahead(item) && !added.contains(item)) {
+                saved.computeIfAbsent(item, Title::new);
+            }
+        }
+
+        // a title was inserted into the title list
+        void titleAdded(StockItem item) {
+            if (ahead(item)) added.add(item);
+        }
+
+        // a title is about to leave the title list
+        void titleRemoved(StockItem item) {
+            if (!ahead(item) || added.remove(item)) return;
+            Title title = saved.remove(item);
+            removed.put(item, title != null ? title : new Title(item));
+        }
+
+        // a person was added to the customer list
+        void customerAdded(Person person) {
+            if (ahead(person)) addedCustomers.add(person);
+        }
+
+        // a person is about to leave the customer list
+        void customerRemoved(Person person) {
+            if (ahead(person) && !addedCustomers.remove(person)) {
+                removedCustomers.add(person);
+            }
+        }
+    }
+
+    private InventoryExport() {}
+
+    /**
+     * Writes an inventory to a file. The data goes to a temporary file
+     * first, which then replaces the target, so no one reading the target
+     * ever sees part of an export. The caller has made the inventory record
+     * its changes in the epoch until this returns.
+     * @param inventory the inventory to export
+     * @param epoch the state of this export
+     * @param file the file to write
+     * @param format the format to write it in
+     * @return the number of records written, not counting a CSV header
+     * @throws IOException if the file cannot be written
+     */
+    static long write(Inventory inventory, Epoch epoch, Path file,
+                      ExportFormat format) throws IOException {
+        Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+        long records = 0;
+
+        try (FileChannel channel = FileChannel.open(tmp,
+                StandardOpenOption.WRITE, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            ReportWriter out = new ReportWriter(channel, StandardCharsets.UTF_8);
+            boolean csv = format == ExportFormat.CSV;
+            if (csv) out.println(CSV_HEADER);
+
+            List<Title> titles;
+            while (!(titles = inventory.exportTitles(epoch, PAGE_SIZE)).isEmpty()) {
+                for (Title title : titles) {
+                    records += csv ? writeCsv(title, out) : writeJson(title, out);
+                }
+            }
+            List<Person> customers;
+            while (!(customers = inventory.exportCustomers(epoch, PAGE_SIZE)).isEmpty()) {
+                for (Person person : customers) {
+                    if (csv) {
+                        out.print("customer,,,,");
+                        writeCsvName(person, out);
+                    } else {
+                        out.print("{\"type\":\"customer\",");
+                        writeJsonName(person, out);
+                        out.print('}');
+                    }
+                    out.println();
+                    records++;
+                }
+            }
+            out.flush();
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        } catch (WaitingListException e) {
+            throw e.getCause();
+        }
+        Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING,
+                   StandardCopyOption.ATOMIC_MOVE);
+        return records;
+    }
+
+    // a title and the people waiting for it as CSV records; returns the
+    // number of records
+    private static int writeCsv(Title item, ReportWriter out) {
+        String title = Csv.quote(item.title);
+        out.print("title,").print(title).print(',')
+           .print(item.have).print(',').print(item.want).println(",,");
+
+        int records = 1;
+        for (Object person : item.waiting) {
+            out.print("waiting,").print(title).print(",,,");
+            writeCsvName((Person) person, out);
+            out.println();
+            records++;
+        }
+        return records;
+    }
+
+    private static void writeCsvName(Person person, ReportWriter out) {
+        out.print(Csv.quote(person.getFirstName())).print(',')
+           .print(Csv.quote(person.getLastName()));
+    }
+
+    // a title and the people waiting for it as one JSON object; returns
+    // the number of records
+    private static int writeJson(Title item, ReportWriter out) {
+        out.print("{\"type\":\"title\",\"title\":");
+        writeJsonString(item.title, out);
+        out.print(",\"have\":").print(item.have)
+           .print(",\"want\":").print(item.want)
+           .print(",\"waiting\":[");
+
+        boolean first = true;
+        for (Object person : item.waiting) {
+            if (!first) out.print(',');
+            first = false;
+            out.print('{');
+            writeJsonName((Person) person, out);
+            out.print('}');
+        }
+        out.println("]}");
+        return 1;
+    }
+
+    private static void writeJsonName(Person person, ReportWriter out) {
+        out.print("\"first\":");
+        writeJsonString(person.getFirstName(), out);
+        out.print(",\"last\":");
+        writeJsonString(person.getLastName(), out);
+    }
+
+    // a JSON string literal, with quotes, backslashes and control
+    // characters escaped
+    private static void writeJsonString(String s, ReportWriter out) {
+        out.print('"');
+        int n = s.length();
+        int plain = 0; // start of the run of characters not yet written
+        for (int i = 0; i < n; i++) {
+            char c = s.charAt(i);
+            if (c >= 0x20 && c != '"' && c != '\\') continue;
+
+            out.print(s.substring(plain, i));
+            plain = i + 1;
+            switch (c) {
+                case '"':  out.print("\\\""); break;
+                case '\\': out.print("\\\\"); break;
+                case '\n': out.print("\\n"); break;
+                case '\r': out.print("\\r"); break;
+                case '\t': out.print("\\t"); break;
+                default:   out.print(String.format("\\u%04x", (int) c));
+            }
+        }
+        out.print(plain == 0 ? s : s.substring(plain));
+        out.print('"');
+    }
+}
@@ -1,6 +1,6 @@
 package inventory;
 
-import sortedList.SortedList;
+import sortedList.SortedListInterface;
 
 /**
  * @author Haiping Xu
@@ -67,7 +67,7 @@ public interface InventoryInterface {
     // Save the current inventory and associated waiting lists when
     // porgram execution terminates
 
-    public SortedList restoreInventory();
+    public SortedListInterface restoreInventory();
     // Restore the current inventory and associated waiting lists when
     // program execution begins again
 
@@ -0,0 +1,522 @@
+package inventory;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedByInterruptException;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.util.Objects;
+
+/**
+ * Reads and writes the inventory data file in a compact binary format.
+ * The file is written in one pass through a buffered channel; titles and
+ * customers are stored in sorted order, so reading rebuilds the sorted
+ * lists with sortedAppend instead of sortedAdd.
+ *
+ * Layout (integers are 4-byte big-endian; a string is an int byte count
+ * followed by that many UTF-8 bytes; a person is first name, last name):
+ * <pre>
+ *   int    MAGIC
+ *   int    VERSION
+ *   long   sequence number of the last journal record included
+ *   long   offset of the title index
+ *   int    number of customers, then each customer
+ *          the waiting lists that are not empty, in title order: for
+ *            each, int length, then each person on the list
+ *   int    number of titles (the title index), then for each title:
+ *            string title, int have, int want,
+ *            long offset of its waiting list (0 if it is empty)
+ * </pre>
+ * Versions 1 and 2 stored each title with its waiting list inline,
+ * followed by the customers (version 1 without the sequence number);
+ * they are still read.
+ *
+ * Keeping the waiting lists apart from the compact title index lets a
+ * file be restored lazily: the customers and the title index are read
+ * right away, and each waiting list is read from its offset the first
+ * time it is used, or by a warm-up pass in the background (see Lazy).
+ */
+class InventorySnapshot {
+
+    static final int MAGIC = 0x494E5654; // "INVT"
+    static final int VERSION = 3;
+
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    // buffer size for reading a single waiting list on first use
+    private static final int FAULT_BUFFER_SIZE = 1 << 10;
+
+    private InventorySnapshot() {}
+
+    /**
+     * Writes the inventory to a file. The data goes to a temporary file
+     * first, which then replaces the target, so a failed save leaves the
+     * previous file intact.
+     * @param inventory the inventory to save
+     * @param file the data file
+     * @return the number of bytes written
+     * @throws IOException if the file cannot be written
+     */
+    static long write(Inventory inventory, Path file) throws IOException {
+        Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+        long written;
+
+        try (FileChannel channel = FileChannel.open(tmp,
+                StandardOpenOption.WRITE, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            Output out = new Output(channel);
+            out.putInt(MAGIC);
+            out.putInt(VERSION);
+            out.putLong(inventory.getSnapshotSequence());
+            long indexOffsetAt = out.position();
+            out.putLong(0); // filled in below
+
+            out.putInt(inventory.customerList.size());
+            for (Object person : inventory.customerList) {
+                out.putPerson((Person) person);
+            }
+
+            long[] offsets = new long[inventory.size()];
+            int i = 0;
+            for (Object dataItem : inventory) {
+                WaitingList waitingList = ((StockItem) dataItem).getWaitingList();
+                if (waitingList.size() > 0) {
+                    offsets[i] = out.position();
+                    out.putInt(waitingList.size());
+                    for (Object person : waitingList) {
+                        out.putPerson((Person) person);
+                    }
+                }
+                i++;
+            }
+
+            long indexOffset = out.position();
+            out.putInt(offsets.length);
+            i = 0;
+            for (Object dataItem : inventory) {
+                StockItem item = (StockItem) dataItem;
+                out.putString(item.getTitle());
+                out.putInt(item.getHave());
+                out.putInt(item.getWant());
+                out.putLong(offsets[i++]);
+            }
+            out.flush();
+            written = out.written();
+
+            ByteBuffer offset = ByteBuffer.allocate(8).putLong(0, indexOffset);
+            while (offset.hasRemaining()) {
+                channel.write(offset, indexOffsetAt + offset.position());
+            }
+        }
+        Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING,
+                   StandardCopyOption.ATOMIC_MOVE);
+        return written;
+    }
+
+    /**
+     * Reads a data file into an inventory.
+     * @param file the data file
+     * @param inventory an inventory with empty title and customer lists
+     * @param lazy if true, the waiting lists are read when first used or
+     *        by a warm-up pass in the background, instead of before this
+     *        returns (files of versions before 3 are always read at once)
+     * @throws IOException if the file cannot be read or is not a data file
+     *         of a supported version
+     */
+    static void read(Path file, Inventory inventory, boolean lazy)
+            throws IOException {
+        FileChannel channel = FileChannel.open(file, StandardOpenOption.READ);
+        Lazy waitingLists = null;
+        try {
+            Input in = new Input(channel);
+            if (in.getInt() != MAGIC) {
+                throw new IOException("Not an inventory data file: " + file);
+            }
+            int version = in.getInt();
+            if (version < 1 || version > VERSION) {
+                throw new IOException("Unsupported inventory data file " +
+                                      "version " + version + ": " + file);
+            }
+            inventory.setSnapshotSequence(version >= 2 ? in.getLong() : 0);
+
+            if (version < 3) {
+                readInline(in, inventory);
+                return;
+            }
+            long indexOffset = in.getLong();
+
+            int customers = in.getInt();
+            for (int i = 0; i < customers; i++) {
+                inventory.customerList.sortedAppend(in.getPerson());
+            }
+            long waitingListsOffset = in.position();
+
+            in.seek(indexOffset);
+            int titles = in.getInt();
+            waitingLists = new Lazy(file, channel, waitingListsOffset, titles);
+            for (int i = 0; i < titles; i++) {
+                String title = in.getString();
+                int have = in.getInt();
+                int want = in.getInt();
+                long offset = in.getLong();
+                StockItem item = new StockItem(title, waitingLists, offset);
+                item.setHave(have);
+                item.setWant(want);
+                waitingLists.add(item);
+                inventory.sortedAppend(item);
+            }
+        } finally {
+            if (waitingLists == null) {
+                channel.close();
+            }
+        }
+
+        if (lazy) {
+            waitingLists.startWarmUp();
+        } else {
+            waitingLists.warmUp();
+        }
+    }
+
+    // read the titles and waiting lists, then the customers, of a file of
+    // version 1 or 2
+    private static void readInline(Input in, Inventory inventory)
+            throws IOException {
+        int titles = in.getInt();
+        for (int i = 0; i < titles; i++) {
+            StockItem item = new StockItem(in.getString());
+            item.setHave(in.getInt());
+            item.setWant(in.getInt());
+            WaitingList waitingList = item.getWaitingList();
+            int waiting = in.getInt();
+            for (int j = 0; j < waiting; j++) {
+                waitingList.addLast(in.getPerson());
+            }
+            inventory.sortedAppend(item);
+        }
+
+        int customers = in.getInt();
+        for (int i = 0; i < customers; i++) {
+            inventory.customerList.sortedAppend(in.getPerson());
+        }
+    }
+
+    /**
+     * The waiting lists of the titles restored from a data file, still in
+     * the file. A title reads its own list from its offset the first time
+     * it is used (see StockItem.getWaitingList); meanwhile a warm-up pass
+     * reads the lists in file order, which is one sequential read, and
+     * hands each to its title unless the title has already read it. Once
+     * the pass is done every list is in memory and the file is closed.
+     */
+    static class Lazy {
+        private final Path file;
+        private volatile FileChannel channel;
+        private final long waitingListsOffset;
+        private StockItem[] items; // the titles, in file order
+        private int numItems;
+
+        // what identifies the file that was restored, so that reopen can
+        // tell it from a file saved over it since
+        private final Object fileKey;
+        private final FileTime modified;
+        private final long size;
+
+        Lazy(Path file, FileChannel channel, long waitingListsOffset,
+             int titles) throws IOException {
+            this.file = file;
+            this.channel = channel;
+            this.waitingListsOffset = waitingListsOffset;
+            this.items = new StockItem[titles];
+            BasicFileAttributes attributes =
+                    Files.readAttributes(file, BasicFileAttributes.class);
+            fileKey = attributes.fileKey();
+            modified = attributes.lastModifiedTime();
+            size = channel.size();
+        }
+
+        private void add(StockItem item) {
+            items[numItems++] = item;
+        }
+
+        /**
+         * Reads one waiting list from the file. Positional reads leave the
+         * channel's position alone, so this can run while the warm-up pass
+         * reads through the file.
+         *
+         * A thread that is interrupted during a read closes the channel for
+         * every thread that shares it. A reader that finds it closed opens
+         * the file again and retries; the one that was interrupted does so
+         * with its interrupt status cleared, and sets it again afterwards.
+         * @param title the title of the list
+         * @param offset where the list is, or 0 for an empty list
+         * @return the waiting list
+         * @throws IOException if the file cannot be read
+         */
+        WaitingList read(String title, long offset) throws IOException {
+            if (offset == 0) {
+                return new WaitingList(title);
+            }
+            boolean interrupted = false;
+            try {
+                while (true) {
+                    FileChannel channel = this.channel;
+                    try {
+                        return readList(new Input(channel, offset, FAULT_BUFFER_SIZE),
+                                        title);
+                    } catch (ClosedByInterruptException e) {
+                        Thread.interrupted(); // or the retry is closed too
+                        interrupted = true;
+                        reopen(channel);
+                    } catch (ClosedChannelException e) {
+                        reopen(channel);
+                    }
+                }
+            } finally {
+                if (interrupted) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        }
+
+        // Open the file again if the channel is still the closed one that
+        // a reader found, and no other reader has reopened it yet. The
+        // offsets hold only for the file that was restored: if another
+        // file has been saved at its path since, which saveInventory does
+        // by replacing it, this throws instead of reading the new one.
+        private synchronized void reopen(FileChannel closed) throws IOException {
+            if (channel != closed) {
+                return;
+            }
+            FileChannel reopened = FileChannel.open(file, StandardOpenOption.READ);
+            BasicFileAttributes attributes =
+                    Files.readAttributes(file, BasicFileAttributes.class);
+            if (reopened.size() != size ||
+                    !Objects.equals(attributes.fileKey(), fileKey) ||
+                    !attributes.lastModifiedTime().equals(modified)) {
+                reopened.close();
+                throw new IOException("The data file " + file + " has been " +
+                                      "replaced since it was restored; the " +
+                                      "waiting lists not yet read from it " +
+                                      "can no longer be read");
+            }
+            channel = reopened;
+        }
+
+        // read a waiting list at the position of in
+        private static WaitingList readList(Input in, String title)
+                throws IOException {
+            WaitingList waitingList = new WaitingList(title);
+            int waiting = in.getInt();
+            for (int j = 0; j < waiting; j++) {
+                waitingList.addLast(in.getPerson());
+            }
+            return waitingList;
+        }
+
+        // run warmUp on a background thread
+        private void startWarmUp() {
+            Thread thread = new Thread(() -> {
+                try {
+                    warmUp();
+                } catch (IOException e) {
+                    System.out.println(e);
+                }
+            }, "inventory-warm-up " + file.getFileName());
+            thread.setDaemon(true);
+            thread.setPriority(Thread.MIN_PRIORITY);
+            thread.start();
+        }
+
+        // Read every waiting list that is not empty, in file order, and
+        // close the file. If a title's reader was interrupted and closed
+        // the channel, the file is opened again (see read). On an error the
+        // file stays open, so titles can still read their own lists.
+        private void warmUp() throws IOException {
+            FileChannel channel = this.channel;
+            Input in = new Input(channel, waitingListsOffset, BUFFER_SIZE);
+            for (int i = 0; i < numItems; i++) {
+                StockItem item = items[i];
+                long offset = item.getWaitingOffset();
+                if (offset == 0 || item.hasWaitingList()) continue;
+
+                WaitingList waitingList;
+                while (true) {
+                    try {
+                        in.seek(offset); // past any lists titles already read
+                        waitingList = readList(in, item.getTitle());
+                        break;
+                    } catch (ClosedChannelException e) {
+                        reopen(channel);
+                        channel = this.channel;
+                        in = new Input(channel, offset, BUFFER_SIZE);
+                    }
+                }
+                item.supplyWaitingList(waitingList);
+                items[i] = null;
+            }
+            items = null;
+            this.channel.close();
+        }
+    }
+
+    // Buffered writer of ints and strings to a channel.
+    static class Output {
+        private final FileChannel channel;
+        private final ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+        private long written; // bytes written to the channel so far
+
+        Output(FileChannel channel) {
+            this.channel = channel;
+        }
+
+        void putInt(int value) throws IOException {
+            ensure(4);
+            buffer.putInt(value);
+        }
+
+        void putLong(long value) throws IOException {
+            ensure(8);
+            buffer.putLong(value);
+        }
+
+        void putString(String value) throws IOException {
+            byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+            putInt(bytes.length);
+            if (bytes.length <= buffer.capacity()) {
+                ensure(bytes.length);
+                buffer.put(bytes);
+            } else {
+                flush();
+                drain(ByteBuffer.wrap(bytes));
+            }
+        }
+
+        void putPerson(Person person) throws IOException {
+            putString(person.getFirstName());
+            putString(person.getLastName());
+        }
+
+        void flush() throws IOException {
+            buffer.flip();
+            drain(buffer);
+            buffer.clear();
+        }
+
+        long written() {
+            return written;
+        }
+
+        // the file position of the next byte to be written
+        long position() {
+            return written + buffer.position();
+        }
+
+        private void ensure(int n) throws IOException {
+            if (buffer.remaining() < n) {
+                flush();
+            }
+        }
+
+        private void drain(ByteBuffer src) throws IOException {
+            while (src.hasRemaining()) {
+                written += channel.write(src);
+            }
+        }
+    }
+
+    // Buffered reader of ints and strings from a channel. It reads with
+    // positional reads, so several Inputs can share one channel.
+    static class Input {
+        private final FileChannel channel;
+        private final ByteBuffer buffer;
+        private long next; // file position of the byte after the buffer
+
+        // constructor: reads from the start of the file
+        Input(FileChannel channel) {
+            this(channel, 0, BUFFER_SIZE);
+        }
+
+        // constructor: reads from position on, through a buffer of size
+        // bytes (at least 8)
+        Input(FileChannel channel, long position, int size) {
+            this.channel = channel;
+            this.buffer = size >= BUFFER_SIZE ? ByteBuffer.allocateDirect(size)
+                                              : ByteBuffer.allocate(size);
+            this.next = position;
+            buffer.flip(); // start out empty
+        }
+
+        // the file position of the next byte to be read
+        long position() {
+            return next - buffer.remaining();
+        }
+
+        // continue reading at a file position
+        void seek(long position) {
+            long ahead = position - position();
+            if (ahead >= 0 && ahead <= buffer.remaining()) {
+                buffer.position(buffer.position() + (int) ahead);
+            } else {
+                buffer.clear().flip();
+                next = position;
+            }
+        }
+
+        int getInt() throws IOException {
+            ensure(4);
+            return buffer.getInt();
+        }
+
+        long getLong() throws IOException {
+            ensure(8);
+            return buffer.getLong();
+        }
+
+        String getString() throws IOException {
+            int length = getInt();
+            if (length < 0) {
+                throw new IOException("Corrupt inventory data file");
+            }
+            byte[] bytes = new byte[length];
+            int copied = 0;
+            while (copied < length) {
+                ensure(1);
+                int n = Math.min(length - copied, buffer.remaining());
+                buffer.get(bytes, copied, n);
+                copied += n;
+            }
+            return new String(bytes, StandardCharsets.UTF_8);
+        }
+
+        Person getPerson() throws IOException {
+            String first = getString();
+            String last = getString();
+            return new Person(first, last);
+        }
+
+        // make at least n (at most the buffer size) bytes available
+        private void ensure(int n) throws IOException {
+            if (buffer.remaining() >= n) {
+                return;
+            }
+            buffer.compact();
+            while (buffer.position() < n) {
+                int read = channel.read(buffer, next);
+                if (read < 0) {
+                    throw new EOFException("Truncated inventory data file");
+                }
+                next += read;
+            }
+            buffer.flip();
+        }
+    }
+}
@@ -0,0 +1,484 @@
+package inventory;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32;
+
+/**
+ * Append-only journal of inventory mutations. Every change made through
+ * Inventory is recorded here, so the state since the last snapshot can be
+ * rebuilt after a crash by replaying the journal on top of that snapshot.
+ *
+ * Records are collected in memory and written in groups: a group is
+ * written when the buffer fills up or when the flush interval passes,
+ * whichever comes first. The sync policy decides whether a write is also
+ * forced to the disk.
+ *
+ * Record layout (integers big-endian, strings as in InventorySnapshot):
+ * <pre>
+ *   int    length of the fields from sequence to the end of the payload
+ *   long   sequence number, increasing by one per record
+ *   byte   operation
+ *   ...    payload
+ *   int    CRC-32 of the fields from sequence to the end of the payload
+ * </pre>
+ * Replay stops at the first record that is incomplete or fails its
+ * checksum, which is where a crash interrupted the last write.
+ */
+public class Journal implements Closeable {
+
+    /**
+     * When journal writes are forced to the disk.
+     */
+    public enum SyncPolicy {
+        /** write and force every record before the mutation returns */
+        ALWAYS,
+        /** force each group of records when it is written */
+        BATCH,
+        /** leave flushing to the operating system */
+        NEVER
+    }
+
+    // operations
+    static final byte PUT_ITEM = 1;        // StockItem
+    static final byte REPLACE_ITEM = 2;    // title, StockItem
+    static final byte DELETE_ITEM = 3;     // title
+    static final byte SET_HAVE = 4;        // title, have
+    static final byte SET_WANT = 5;        // title, want
+    static final byte WAIT_ADD = 6;        // title, Person
+    static final byte WAIT_DRAIN = 7;      // title, count
+    static final byte CUSTOMER_ADD = 8;    // Person
+    static final byte CUSTOMER_DELETE = 9; // Person
+    static final byte CLEAR_ITEMS = 10;
+    static final byte CLEAR_CUSTOMERS = 11;
+
+    private static final int HEADER_SIZE = 4 + 8 + 1;
+    private static final int GROUP_SIZE = 1 << 16;
+
+    // part of the file mapped at once by replay (more for a longer record)
+    private static final int REPLAY_WINDOW = 1 << 28;
+
+    private final FileChannel channel;
+    private final SyncPolicy policy;
+    private final ScheduledExecutorService flusher;
+
+    // records waiting to be written, and the record being built
+    private ByteBuffer pending = ByteBuffer.allocate(GROUP_SIZE);
+    private ByteBuffer record = ByteBuffer.allocate(256);
+    private final CRC32 crc = new CRC32();
+
+    private long sequence;       // sequence number of the last record
+    private int recordsInFile;   // records written since the last truncate
+
+    /**
+     * Opens a journal file for appending, creating it if needed. Call
+     * replay before logging anything, so the journal continues after the
+     * records already in the file.
+     * @param file the journal file
+     * @param policy when writes are forced to the disk
+     * @param flushMillis longest time a record waits in memory before its
+     *        group is written (ignored for SyncPolicy.ALWAYS)
+     * @throws IOException if the file cannot be opened
+     */
+    public Journal(Path file, SyncPolicy policy, long flushMillis)
+            throws IOException {
+        this.channel = FileChannel.open(file, StandardOpenOption.CREATE,
+                StandardOpenOption.READ, StandardOpenOption.WRITE);
+        this.policy = policy;
+        if (policy == SyncPolicy.ALWAYS) {
+            flusher = null;
+        } else {
+            flusher = Executors.newSingleThreadScheduledExecutor(r -> {
+                Thread t = new Thread(r, "journal-flusher");
+                t.setDaemon(true);
+                return t;
+            });
+            flusher.scheduleWithFixedDelay(this::flushQuietly, flushMillis,
+                                           flushMillis, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    ////////////
+    // Logging
+    ////////////
+
+    synchronized void logPutItem(StockItem item) throws IOException {
+        begin(PUT_ITEM);
+        putItem(item);
+        end();
+    }
+
+    synchronized void logReplaceItem(String title, StockItem item)
+            throws IOException {
+        begin(REPLACE_ITEM);
+        putString(title);
+        putItem(item);
+        end();
+    }
+
+    synchronized void logDeleteItem(String title) throws IOException {
+        begin(DELETE_ITEM);
+        putString(title);
+        end();
+    }
+
+    synchronized void logSetHave(String title, int have) throws IOException {
+        begin(SET_HAVE);
+        putString(title);
+        putInt(have);
+        end();
+    }
+
+    synchronized void logSetWant(String title, int want) throws IOException {
+        begin(SET_WANT);
+        putString(title);
+        putInt(want);
+        end();
+    }
+
+    synchronized void logWaitAdd(String title, Person person)
+            throws IOException {
+        begin(WAIT_ADD);
+        putString(title);
+        putPerson(person);
+        end();
+    }
+
+    synchronized void logWaitDrain(String title, int count) throws IOException {
+        begin(WAIT_DRAIN);
+        putString(title);
+        putInt(count);
+        end();
+    }
+
+    synchronized void logCustomerAdd(Person person) throws IOException {
+        begin(CUSTOMER_ADD);
+        putPerson(person);
+        end();
+    }
+
+    synchronized void logCustomerDelete(Person person) throws IOException {
+        begin(CUSTOMER_DELETE);
+        putPerson(person);
+        end();
+    }
+
+    synchronized void logClearItems() throws IOException {
+        begin(CLEAR_ITEMS);
+        end();
+    }
+
+    synchronized void logClearCustomers() throws IOException {
+        begin(CLEAR_CUSTOMERS);
+        end();
+    }
+
+    /**
+     * Gets the sequence number of the last record logged.
+     * @return the sequence number, or the starting number given to replay
+     *         if nothing has been logged
+     */
+    public synchronized long lastSequence() {
+        return sequence;
+    }
+
+    /**
+     * Gets the number of records in the journal file, including records
+     * still waiting to be written.
+     * @return the number of records since the file was last truncated
+     */
+    public synchronized int size() {
+        return recordsInFile;
+    }
+
+    /**
+     * Writes the records waiting in memory and, unless the policy is
+     * NEVER, forces them to the disk.
+     * @throws IOException if the write fails
+     */
+    public synchronized void flush() throws IOException {
+        if (pending.position() == 0) {
+            return;
+        }
+        pending.flip();
+        while (pending.hasRemaining()) {
+            channel.write(pending);
+        }
+        pending.clear();
+        if (policy != SyncPolicy.NEVER) {
+            channel.force(false);
+        }
+    }
+
+    /**
+     * Empties the journal file once its records are covered by a snapshot.
+     * Sequence numbers carry on from where they were.
+     * @throws IOException if the file cannot be truncated
+     */
+    public synchronized void truncate() throws IOException {
+        flush();
+        channel.truncate(0);
+        channel.position(0);
+        if (policy != SyncPolicy.NEVER) {
+            channel.force(true);
+        }
+        recordsInFile = 0;
+    }
+
+    /**
+     * Writes any waiting records and closes the journal file.
+     * @throws IOException if the final write fails
+     */
+    public synchronized void close() throws IOException {
+        if (flusher != null) {
+            flusher.shutdownNow();
+        }
+        try {
+            flush();
+        } finally {
+            channel.close();
+        }
+    }
+
+    private void flushQuietly() {
+        try {
+            flush();
+        } catch (IOException e) {
+            System.out.println(e);
+        }
+    }
+
+    private void begin(byte op) {
+        record.clear();
+        record.position(4); // length, filled in by end()
+        record.putLong(sequence + 1);
+        record.put(op);
+    }
+
+    private void end() throws IOException {
+        int length = record.position() - 4;
+        record.putInt(0, length);
+        crc.reset();
+        crc.update(record.array(), 4, length);
+        putInt((int) crc.getValue());
+        record.flip();
+
+        if (pending.remaining() < record.remaining()) {
+            flush();
+            if (pending.capacity() < record.remaining()) {
+                pending = ByteBuffer.allocate(record.remaining());
+            }
+        }
+        pending.put(record);
+        sequence++;
+        recordsInFile++;
+        if (policy == SyncPolicy.ALWAYS) {
+            flush();
+        }
+    }
+
+    private void ensure(int n) {
+        if (record.remaining() < n) {
+            ByteBuffer larger = ByteBuffer.allocate(
+                    Math.max(record.capacity() * 2, record.position() + n + 4));
+            record.flip();
+            larger.put(record);
+            record = larger;
+        }
+    }
+
+    private void putInt(int value) {
+        ensure(4);
+        record.putInt(value);
+    }
+
+    private void putString(String value) {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        ensure(4 + bytes.length);
+        record.putInt(bytes.length);
+        record.put(bytes);
+    }
+
+    private void putPerson(Person person) {
+        putString(person.getFirstName());
+        putString(person.getLastName());
+    }
+
+    private void putItem(StockItem item) {
+        putString(item.getTitle());
+        putInt(item.getHave());
+        putInt(item.getWant());
+        WaitingList waitingList = item.getWaitingList();
+        putInt(waitingList.size());
+        for (Object person : waitingList) {
+            putPerson((Person) person);
+        }
+    }
+
+    ///////////
+    // Replay
+    ///////////
+
+    /**
+     * Applies the records in the journal file to an inventory and
+     * positions the journal for appending after the last valid record.
+     * Anything after that record (the remains of an interrupted write) is
+     * cut off.
+     * @param afterSequence records up to this sequence number are already
+     *        part of the inventory (taken from its snapshot) and are skipped
+     * @param inventory the inventory to apply the records to; it must not
+     *        have a journal attached while replaying
+     * @return the number of records applied
+     * @throws IOException if the file cannot be read
+     */
+    public synchronized int replay(long afterSequence, Inventory inventory)
+            throws IOException {
+        long fileSize = channel.size();
+        long validEnd = 0;
+        int applied = 0;
+        sequence = afterSequence;
+        recordsInFile = 0;
+
+        // the file is mapped a window at a time, since one mapping cannot
+        // reach past 2 GB; a window always starts at a record boundary
+        MappedByteBuffer in = null;
+        long base = 0; // file position of the start of the window
+        long pos = 0;  // file position of the next record
+        while (fileSize - pos >= HEADER_SIZE + 4) {
+            if (in == null || pos + 4 > base + in.limit()) {
+                base = pos;
+                in = map(base, 4, fileSize);
+            }
+            int length = in.getInt((int) (pos - base));
+            if (length < HEADER_SIZE - 4 || length > Integer.MAX_VALUE - 8 ||
+                    fileSize - pos - 4 < length + 4L) {
+                break;
+            }
+            if (pos + 4 + length + 4 > base + in.limit()) {
+                base = pos;
+                in = map(base, length + 8, fileSize);
+            }
+            in.position((int) (pos - base) + 4);
+            byte[] body = new byte[length];
+            in.get(body);
+            crc.reset();
+            crc.update(body, 0, length);
+            if (in.getInt() != (int) crc.getValue()) {
+                break;
+            }
+
+            ByteBuffer fields = ByteBuffer.wrap(body);
+            long recordSequence = fields.getLong();
+            byte op = fields.get();
+            if (recordSequence > afterSequence) {
+                apply(op, fields, inventory);
+                applied++;
+            }
+            sequence = Math.max(sequence, recordSequence);
+            recordsInFile++;
+            pos += 4 + length + 4;
+            validEnd = pos;
+        }
+        channel.truncate(validEnd);
+        channel.position(validEnd);
+        return applied;
+    }
+
+    // map the journal file from a position: REPLAY_WINDOW bytes, or the
+    // needed bytes if that is more, or up to the end of the file
+    private MappedByteBuffer map(long position, int needed, long fileSize)
+            throws IOException {
+        long size = Math.min(fileSize - position, Math.max(REPLAY_WINDOW, needed));
+        return channel.map(FileChannel.MapMode.READ_ONLY, position, size);
+    }
+
+    private static void apply(byte op, ByteBuffer in, Inventory inventory) {
+        String title;
+        StockItem item;
+
+        switch (op) {
+            case PUT_ITEM:
+                item = getItem(in);
+                if (inventory.findStockItem(item.getTitle()) != null) {
+                    inventory.replaceStockItem(item.getTitle(), item);
+                } else {
+                    inventory.insertStockItem(item);
+                }
+                break;
+            case REPLACE_ITEM:
+                title = getString(in);
+                inventory.replaceStockItem(title, getItem(in));
+                break;
+            case DELETE_ITEM:
+                item = inventory.findStockItem(getString(in));
+                if (item != null) inventory.deleteStockItem(item);
+                break;
+            case SET_HAVE:
+                item = inventory.findStockItem(getString(in));
+                if (item != null) inventory.setHave(item, in.getInt());
+                break;
+            case SET_WANT:
+                item = inventory.findStockItem(getString(in));
+                if (item != null) inventory.setWant(item, in.getInt());
+                break;
+            case WAIT_ADD:
+                title = getString(in);
+                if (inventory.findStockItem(title) != null)
+                    inventory.addToWaitingList(title, getPerson(in));
+                break;
+            case WAIT_DRAIN:
+                item = inventory.findStockItem(getString(in));
+                if (item != null) inventory.drainWaitingList(item, in.getInt());
+                break;
+            case CUSTOMER_ADD:
+                inventory.addToCustomerList(getPerson(in));
+                break;
+            case CUSTOMER_DELETE:
+                inventory.removeFromCustomerList(getPerson(in));
+                break;
+            case CLEAR_ITEMS:
+                inventory.removeAll();
+                break;
+            case CLEAR_CUSTOMERS:
+                inventory.deleteAllFromCustomerList();
+                break;
+            default:
+                throw new IllegalStateException("Unknown journal operation " + op);
+        }
+    }
+
+    private static String getString(ByteBuffer in) {
+        int length = in.getInt();
+        String value = new String(in.array(), in.arrayOffset() + in.position(),
+                                  length, StandardCharsets.UTF_8);
+        in.position(in.position() + length);
+        return value;
+    }
+
+    private static Person getPerson(ByteBuffer in) {
+        String first = getString(in);
+        String last = getString(in);
+        return new Person(first, last);
+    }
+
+    private static StockItem getItem(ByteBuffer in) {
+        StockItem item = new StockItem(getString(in));
+        item.setHave(in.getInt());
+        item.setWant(in.getInt());
+        WaitingList waitingList = item.getWaitingList();
+        int waiting = in.getInt();
+        for (int i = 0; i < waiting; i++) {
+            waitingList.addLast(getPerson(in));
+        }
+        return item;
+    }
+}
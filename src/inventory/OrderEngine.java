@@ -0,0 +1,101 @@
+package inventory;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Computes purchase and return orders in parallel on a ForkJoinPool. The
+ * titles that need an order line, in title order, are cut into chunks of
+ * consecutive titles; each chunk is worked on by one task, and the lines
+ * of the chunks are joined in chunk order, so the result is in title
+ * order exactly as a sequential run would produce it.
+ *
+ * Usage: inventory.purchaseOrder(engine), inventory.returnOrder(engine).
+ */
+public class OrderEngine {
+
+    // titles per task; smaller orders are done on the calling thread
+    static final int DEFAULT_CHUNK = 4096;
+
+    private final ForkJoinPool pool;
+    private final int chunk;
+
+    // constructor: up to parallelism worker threads
+    public OrderEngine(int parallelism) {
+        this(parallelism, DEFAULT_CHUNK);
+    }
+
+    // constructor: up to parallelism worker threads, chunk titles per task
+    public OrderEngine(int parallelism, int chunk) {
+        if (parallelism < 1 || chunk < 1) {
+            throw new IllegalArgumentException("parallelism and chunk must " +
+                                               "be positive");
+        }
+        this.pool = new ForkJoinPool(parallelism);
+        this.chunk = chunk;
+    }
+
+    // get the number of worker threads
+    public int getParallelism() {
+        return pool.getParallelism();
+    }
+
+    // stop the worker threads once the running orders are done
+    public void shutdown() {
+        pool.shutdown();
+    }
+
+    // Work on the positions 0 .. n-1 in chunks, and join the order lines
+    // of the chunks in position order.
+    OrderLine[] run(int n, RangeWork work) {
+        if (n <= chunk) {
+            return work.run(0, n);
+        }
+
+        OrderLine[][] results = new OrderLine[(n + chunk - 1) / chunk][];
+        pool.invoke(new Chunks(work, results, n, 0, results.length));
+
+        int total = 0;
+        for (OrderLine[] lines : results) {
+            total += lines.length;
+        }
+        OrderLine[] joined = new OrderLine[total];
+        int next = 0;
+        for (OrderLine[] lines : results) {
+            System.arraycopy(lines, 0, joined, next, lines.length);
+            next += lines.length;
+        }
+        return joined;
+    }
+
+    // The order lines for the positions from .. to-1, in order.
+    interface RangeWork {
+        OrderLine[] run(int from, int to);
+    }
+
+    // Works on chunks first .. last-1 by splitting them in halves.
+    private class Chunks extends RecursiveAction {
+        private final RangeWork work;
+        private final OrderLine[][] results;
+        private final int n, first, last;
+
+        Chunks(RangeWork work, OrderLine[][] results, int n, int first, int last) {
+            this.work = work;
+            this.results = results;
+            this.n = n;
+            this.first = first;
+            this.last = last;
+        }
+
+        protected void compute() {
+            if (last - first == 1) {
+                int from = first * chunk;
+                results[first] = work.run(from, Math.min(from + chunk, n));
+            } else {
+                int mid = (first + last) >>> 1;
+                invokeAll(new Chunks(work, results, n, first, mid),
+                          new Chunks(work, results, n, mid, last));
+            }
+        }
+    }
+}
@@ -0,0 +1,26 @@
+package inventory;
+
+/**
+ * One line of a purchase or return order: a title and the number of
+ * videos ordered or returned for it.
+ */
+public class OrderLine {
+    private final String title;
+    private final int quantity;
+
+    // constructor
+    public OrderLine(String title, int quantity) {
+        this.title = title;
+        this.quantity = quantity;
+    }
+
+    // get the title
+    public String getTitle() {
+        return title;
+    }
+
+    // get the number of videos ordered or returned
+    public int getQuantity() {
+        return quantity;
+    }
+}
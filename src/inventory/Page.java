@@ -0,0 +1,45 @@
+package inventory;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * One page of a listing of titles or customers: up to a requested number
+ * of items in sorted order, and an opaque token that resumes the listing
+ * after the last of them (null when there is nothing after it).
+ *
+ * A token holds the key of the last item on its page, not a position, so
+ * fetching the next page costs O(log n + N) wherever it starts, and items
+ * added or deleted between pages never make the others repeat or go
+ * missing. Tokens are plain strings, safe to print and to type back in.
+ *
+ * Usage: inventory.titlePage(null, 20), then
+ *        inventory.nextTitlePage(page.getNextToken(), 20) while
+ *        page.hasMore().
+ */
+public class Page<T> {
+    private final List<T> items;
+    private final String nextToken;
+
+    // constructor; see Inventory.titlePage and Inventory.customerPage
+    Page(List<T> items, String nextToken) {
+        this.items = Collections.unmodifiableList(items);
+        this.nextToken = nextToken;
+    }
+
+    // get the items on this page, in sorted order
+    public List<T> getItems() {
+        return items;
+    }
+
+    // get the token that resumes after this page, or null if this is
+    // the last page
+    public String getNextToken() {
+        return nextToken;
+    }
+
+    // tell whether there are items after this page
+    public boolean hasMore() {
+        return nextToken != null;
+    }
+}
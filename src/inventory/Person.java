@@ -9,10 +9,25 @@ public class Person implements Comparable, Serializable {
     private String lastName;
     private String firstName;
 
+    // upper-cased "last first" name used for comparisons; not serialized,
+    // recomputed on first use after deserialization
+    private transient String sortKey;
+
     // constructor
     public Person(String first, String last) {
         lastName = last;
         firstName = first;
+        sortKey = sortKeyOf(first, last);
+    }
+
+    // get the first name
+    public String getFirstName() {
+        return firstName;
+    }
+
+    // get the last name
+    public String getLastName() {
+        return lastName;
     }
 
     public String toString() {
@@ -21,10 +36,21 @@ public class Person implements Comparable, Serializable {
 
     // define how Person names are compared
     public int compareTo(Object rhs){
-        String lhsStr = lastName + " " + firstName;
-        lhsStr = lhsStr.toUpperCase();
-        String rhsStr = ((Person)rhs).lastName + " " + ((Person)rhs).firstName;
-        rhsStr = rhsStr.toUpperCase();
-        return lhsStr.compareTo(rhsStr);
+        return getSortKey().compareTo(((Person)rhs).getSortKey());
+    }
+
+    // get the key that Persons are ordered by; two persons compare
+    // equal exactly when their keys are equal
+    public String getSortKey() {
+        if (sortKey == null) {
+            sortKey = sortKeyOf(firstName, lastName);
+        }
+        return sortKey;
+    }
+
+    // compute the sort key for a name (last name, then first name,
+    // ignoring case)
+    public static String sortKeyOf(String first, String last) {
+        return (last + " " + first).toUpperCase();
     }
 }
@@ -0,0 +1,157 @@
+package inventory;
+
+import java.io.Closeable;
+import java.io.Flushable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+
+/**
+ * Renders report text into a reusable buffer and writes it out in large
+ * chunks, to an output stream or straight to a channel such as a
+ * FileChannel. Numbers are appended directly instead of going through a
+ * Formatter, and nothing is written until the buffer fills up or flush is
+ * called, so a long report costs a few large writes instead of one
+ * synchronized write per line.
+ *
+ * A ReportWriter is not safe for use by several threads at once. Write
+ * errors are thrown as UncheckedIOException.
+ */
+public class ReportWriter implements Flushable, Closeable {
+
+    private static final int DEFAULT_CAPACITY = 1 << 16;
+    private static final String NEWLINE = System.lineSeparator();
+
+    private final WritableByteChannel channel;
+    private final OutputStream stream; // flushed with the writer, may be null
+    private final CharsetEncoder encoder;
+    private final StringBuilder text;
+    private final ByteBuffer bytes;
+    private final int capacity;
+
+    // constructor: writes to an output stream in the platform charset,
+    // like the PrintStreams the reports used to go to
+    public ReportWriter(OutputStream out) {
+        this(Channels.newChannel(out), out, Charset.defaultCharset(),
+             DEFAULT_CAPACITY);
+    }
+
+    // constructor: writes to a channel, such as a FileChannel
+    public ReportWriter(WritableByteChannel channel, Charset charset) {
+        this(channel, null, charset, DEFAULT_CAPACITY);
+    }
+
+    private ReportWriter(WritableByteChannel channel, OutputStream stream,
+                         Charset charset, int capacity) {
+        this.channel = channel;
+        this.stream = stream;
+        this.encoder = charset.newEncoder()
+                .onMalformedInput(CodingErrorAction.REPLACE)
+                .onUnmappableCharacter(CodingErrorAction.REPLACE);
+        this.text = new StringBuilder(capacity + 256);
+        this.bytes = ByteBuffer.allocate(capacity * 2);
+        this.capacity = capacity;
+    }
+
+    public ReportWriter print(String s) {
+        text.append(s);
+        return spill();
+    }
+
+    public ReportWriter print(Object o) {
+        text.append(o);
+        return spill();
+    }
+
+    public ReportWriter print(int i) {
+        text.append(i);
+        return spill();
+    }
+
+    public ReportWriter print(char c) {
+        text.append(c);
+        return spill();
+    }
+
+    public ReportWriter println() {
+        text.append(NEWLINE);
+        return spill();
+    }
+
+    public ReportWriter println(String s) {
+        text.append(s).append(NEWLINE);
+        return spill();
+    }
+
+    /**
+     * Writes the buffered text, then flushes the underlying stream.
+     */
+    public void flush() {
+        writeText();
+        if (stream != null) {
+            try {
+                stream.flush();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+    }
+
+    /**
+     * Flushes the writer and closes the channel or stream it writes to.
+     */
+    public void close() throws IOException {
+        flush();
+        channel.close();
+    }
+
+    // write the buffer out once it holds a chunk's worth of text
+    private ReportWriter spill() {
+        if (text.length() >= capacity) {
+            writeText();
+        }
+        return this;
+    }
+
+    // encode the buffered text and write it to the channel
+    private void writeText() {
+        if (text.length() == 0) {
+            return;
+        }
+        CharBuffer chars = CharBuffer.wrap(text);
+        encoder.reset();
+        try {
+            CoderResult result;
+            do {
+                result = encoder.encode(chars, bytes, true);
+                if (result.isOverflow()) {
+                    drain();
+                }
+            } while (result.isOverflow());
+            while (encoder.flush(bytes).isOverflow()) {
+                drain();
+            }
+            drain();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } finally {
+            text.setLength(0);
+        }
+    }
+
+    private void drain() throws IOException {
+        bytes.flip();
+        while (bytes.hasRemaining()) {
+            channel.write(bytes);
+        }
+        bytes.clear();
+    }
+}
@@ -1,13 +1,31 @@
 package inventory;
+import java.io.IOException;
+import java.io.ObjectOutputStream;
 import java.io.Serializable;
 
 public class StockItem implements java.lang.Comparable, Serializable {
     private String title;
     private int have, want;
-    private WaitingList waitingList;
+    private volatile WaitingList waitingList;
+
+    // when the item was restored lazily, waitingList stays null until the
+    // list is read from the data file, at waitingOffset (0 if the list is
+    // empty); see InventorySnapshot.Lazy
+    private transient InventorySnapshot.Lazy waitingSource;
+    private transient long waitingOffset;
+
+    // upper-cased title used for comparisons and title lookups; not
+    // serialized, recomputed on first use after deserialization
+    private transient String sortKey;
+
+    // when the item belongs to a columnar inventory, its have and want
+    // values live in columns at slot id instead of in the fields above
+    private transient CountColumns columns;
+    private transient int id;
 
     public StockItem() {
         title = "No title";
+        sortKey = sortKeyOf(title);
         have = 0;
         want = 0;
         waitingList = new WaitingList(title);
@@ -15,31 +33,55 @@ public class StockItem implements java.lang.Comparable, Serializable {
 
     public StockItem(String title) {
         this.title = title;
+        sortKey = sortKeyOf(title);
         have = 0;
         want = 0;
         waitingList = new WaitingList(title);
     }
 
+    // constructor: a restored item whose waiting list is still in the
+    // data file, at offset (0 if the list is empty)
+    StockItem(String title, InventorySnapshot.Lazy source, long offset) {
+        this.title = title;
+        sortKey = sortKeyOf(title);
+        waitingSource = source;
+        waitingOffset = offset;
+    }
+
     // for display StockItem instance
     public String toString() {
-        return title + ": have = " + have + " want = " + want;
+        return title + ": have = " + getHave() + " want = " + getWant();
     }
 
     // define how StockItems are compared
     public int compareTo(Object rhs){
-        String lhsStr = title.toUpperCase();
-        String rhsStr = ((StockItem)rhs).title.toUpperCase();
-        return lhsStr.compareTo(rhsStr);
+        return getSortKey().compareTo(((StockItem)rhs).getSortKey());
+    }
+
+    // get the key that StockItems are ordered by; two items compare
+    // equal exactly when their keys are equal
+    public String getSortKey() {
+        if (sortKey == null) {
+            sortKey = sortKeyOf(title);
+        }
+        return sortKey;
+    }
+
+    // compute the sort key for a title (titles are compared ignoring case)
+    public static String sortKeyOf(String title) {
+        return title.toUpperCase();
     }
 
     // get the have value
     public int getHave() {
-        return have;
+        return columns == null ? have : columns.getHave(id);
     }
 
-    // set the have value
+    // set the have value (use Inventory.setHave for an item already in an
+    // inventory, so its purchase and return orders see the change)
     public void setHave(int have) {
-        this.have = have;
+        if (columns == null) this.have = have;
+        else columns.setHave(id, have);
     }
 
     // get the title
@@ -50,20 +92,83 @@ public class StockItem implements java.lang.Comparable, Serializable {
     // set the title
     public void setTitle(String title) {
         this.title = title;
+        sortKey = sortKeyOf(title);
     }
 
     // get the want value
     public int getWant() {
-        return want;
+        return columns == null ? want : columns.getWant(id);
     }
 
-    // set the want value
+    // set the want value (use Inventory.setWant for an item already in an
+    // inventory, so its purchase and return orders see the change)
     public void setWant(int want) {
-        this.want = want;
+        if (columns == null) this.want = want;
+        else columns.setWant(id, want);
     }
 
-    // get the head reference to the waiting list
+    // get the head reference to the waiting list; if the item was
+    // restored lazily, the list is read from the data file the first time,
+    // and a WaitingListException is thrown if it cannot be
     public WaitingList getWaitingList() {
+        WaitingList list = waitingList;
+        return list != null ? list : readWaitingList();
+    }
+
+    private synchronized WaitingList readWaitingList() {
+        if (waitingList == null) {
+            try {
+                waitingList = waitingSource.read(title, waitingOffset);
+            } catch (IOException e) {
+                throw new WaitingListException(title, e);
+            }
+            waitingSource = null;
+        }
         return waitingList;
     }
+
+    // set the waiting list of a lazily restored item, unless it has read
+    // the list itself already; called by the warm-up pass
+    synchronized void supplyWaitingList(WaitingList list) {
+        if (waitingList == null) {
+            waitingList = list;
+            waitingSource = null;
+        }
+    }
+
+    // tell whether the waiting list is in memory
+    boolean hasWaitingList() {
+        return waitingList != null;
+    }
+
+    // where the waiting list of a lazily restored item is in its data file
+    long getWaitingOffset() {
+        return waitingOffset;
+    }
+
+    // move the have and want values into a slot of the columns
+    void attach(CountColumns columns) {
+        id = columns.allocate(have, want);
+        this.columns = columns;
+    }
+
+    // move the have and want values back out of the columns
+    void detach() {
+        if (columns != null) {
+            have = columns.getHave(id);
+            want = columns.getWant(id);
+            columns.release(id);
+            columns = null;
+        }
+    }
+
+    // serialize the current values, wherever they are kept
+    private void writeObject(ObjectOutputStream out) throws IOException {
+        getWaitingList();
+        if (columns != null) {
+            have = columns.getHave(id);
+            want = columns.getWant(id);
+        }
+        out.defaultWriteObject();
+    }
 }
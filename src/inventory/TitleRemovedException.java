@@ -0,0 +1,14 @@
+package inventory;
+
+/**
+ * Thrown by the inventory operations that change a stock item when the
+ * item is no longer in the inventory: another session deleted or replaced
+ * its title after the caller looked it up. Nothing is changed.
+ */
+public class TitleRemovedException extends RuntimeException {
+
+    // constructor; see Inventory.lockListedItem
+    TitleRemovedException(String title) {
+        super("The title \"" + title + "\" is no longer in the inventory");
+    }
+}
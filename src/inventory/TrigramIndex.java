@@ -0,0 +1,279 @@
+package inventory;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.PriorityQueue;
+
+/**
+ * Index from the trigrams (runs of three characters) of the titles in an
+ * inventory to the titles that contain them, for finding the titles
+ * closest to a misspelled one. A title is matched by its sort key, padded
+ * with two spaces in front and one behind so that its first and last
+ * letters count as much as the others; "STAR" has the trigrams "  S",
+ * " ST", "STA", "TAR" and "AR ".
+ *
+ * The similarity of two titles is the Dice coefficient of their trigram
+ * sets: twice the number of trigrams they share, divided by the sum of
+ * their trigram counts, from 0 (nothing in common) to 1 (same trigrams).
+ * A search only visits the posting lists of the query's own trigrams, so
+ * it touches the titles that share at least one trigram with the query
+ * instead of every title.
+ *
+ * Every title gets a dense document id. Deleting a title only clears
+ * its document; the posting lists still hold the id, and searches skip
+ * it. When cleared documents outnumber the live ones, the index is
+ * rebuilt without them.
+ *
+ * Not thread-safe; Inventory changes the index under its structure write
+ * lock and searches it under the read lock.
+ */
+class TrigramIndex {
+
+    private static final int MIN_REBUILD = 1024;
+
+    // documents by id; null once deleted
+    private StockItem[] docs = new StockItem[1024];
+    private int[] gramCounts = new int[1024]; // distinct trigrams per document
+    private int limit; // ids 0 .. limit-1 have been handed out
+    private int live;  // documents not deleted
+
+    // document id of each title, by sort key
+    private final HashMap<String, Integer> ids = new HashMap<>();
+
+    // open-addressing table from trigram to posting list: grams[slot]
+    // holds a packed trigram (see gramsOf), or EMPTY, and postings[slot]
+    // the ids of the documents that contain it, in postings[slot][0 ..
+    // postingSizes[slot]-1]
+    private static final long EMPTY = -1;
+    private long[] grams;
+    private int[][] postings;
+    private int[] postingSizes;
+    private int numGrams;
+
+    // constructor: an empty index
+    TrigramIndex() {
+        initTable(1 << 12);
+    }
+
+    // index a title
+    void add(StockItem item) {
+        String key = item.getSortKey();
+        if (ids.containsKey(key)) {
+            remove(key);
+        }
+        if (limit == docs.length) {
+            int newCapacity = docs.length + (docs.length >> 1);
+            docs = Arrays.copyOf(docs, newCapacity);
+            gramCounts = Arrays.copyOf(gramCounts, newCapacity);
+        }
+        int id = limit++;
+        long[] itemGrams = gramsOf(key);
+        docs[id] = item;
+        gramCounts[id] = itemGrams.length;
+        ids.put(key, id);
+        live++;
+        for (long gram : itemGrams) {
+            post(gram, id);
+        }
+    }
+
+    // stop indexing the title with a given sort key
+    void remove(String sortKey) {
+        Integer id = ids.remove(sortKey);
+        if (id == null) {
+            return;
+        }
+        docs[id] = null;
+        live--;
+        int dead = limit - live;
+        if (dead > MIN_REBUILD && dead > live) {
+            rebuild();
+        }
+    }
+
+    // drop every title
+    void clear() {
+        docs = new StockItem[1024];
+        gramCounts = new int[1024];
+        limit = 0;
+        live = 0;
+        ids.clear();
+        initTable(1 << 12);
+    }
+
+    /**
+     * Finds the titles most similar to a given one.
+     * @param title the title searched for
+     * @param k the largest number of titles to return
+     * @param minSimilarity the least similarity (0 to 1) of the titles
+     *        returned
+     * @return up to k stock items, most similar first; titles that are
+     *         equally similar are in title order
+     */
+    StockItem[] search(String title, int k, double minSimilarity) {
+        if (k <= 0) {
+            return new StockItem[0];
+        }
+        long[] queryGrams = gramsOf(StockItem.sortKeyOf(title));
+
+        // count the trigrams each document shares with the query
+        int[] shared = new int[limit];
+        int[] touched = new int[64];
+        int numTouched = 0;
+        for (long gram : queryGrams) {
+            int slot = slotOf(gram);
+            if (grams[slot] == EMPTY) {
+                continue;
+            }
+            int[] posting = postings[slot];
+            int size = postingSizes[slot];
+            for (int i = 0; i < size; i++) {
+                int id = posting[i];
+                if (shared[id]++ == 0) {
+                    if (numTouched == touched.length) {
+                        touched = Arrays.copyOf(touched, numTouched * 2);
+                    }
+                    touched[numTouched++] = id;
+                }
+            }
+        }
+
+        // keep the k best in a heap whose head is the worst of them
+        PriorityQueue<Match> best = new PriorityQueue<>(k + 1);
+        for (int i = 0; i < numTouched; i++) {
+            int id = touched[i];
+            if (docs[id] == null) {
+                continue;
+            }
+            double similarity = 2.0 * shared[id] /
+                                (queryGrams.length + gramCounts[id]);
+            if (similarity < minSimilarity) {
+                continue;
+            }
+            Match match = new Match(docs[id], similarity);
+            if (best.size() < k) {
+                best.add(match);
+            } else if (match.compareTo(best.peek()) > 0) {
+                best.poll();
+                best.add(match);
+            }
+        }
+
+        StockItem[] result = new StockItem[best.size()];
+        for (int i = result.length - 1; i >= 0; i--) {
+            result[i] = best.poll().item;
+        }
+        return result;
+    }
+
+    // The distinct trigrams of a sort key, each packed into a long as
+    // three 16-bit chars.
+    static long[] gramsOf(String key) {
+        String padded = "  " + key + " ";
+        long[] result = new long[padded.length() - 2];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = ((long) padded.charAt(i) << 32) |
+                        ((long) padded.charAt(i + 1) << 16) |
+                        padded.charAt(i + 2);
+        }
+        Arrays.sort(result);
+        int distinct = 0;
+        for (int i = 0; i < result.length; i++) {
+            if (i == 0 || result[i] != result[i - 1]) {
+                result[distinct++] = result[i];
+            }
+        }
+        return Arrays.copyOf(result, distinct);
+    }
+
+    // add a document id to the posting list of a trigram
+    private void post(long gram, int id) {
+        int slot = slotOf(gram);
+        if (grams[slot] == EMPTY) {
+            if ((numGrams + 1) * 2 > grams.length) {
+                growTable();
+                slot = slotOf(gram);
+            }
+            grams[slot] = gram;
+            postings[slot] = new int[2];
+            numGrams++;
+        }
+        int[] posting = postings[slot];
+        int size = postingSizes[slot];
+        if (size == posting.length) {
+            posting = Arrays.copyOf(posting, size + (size >> 1) + 1);
+            postings[slot] = posting;
+        }
+        posting[size] = id;
+        postingSizes[slot] = size + 1;
+    }
+
+    // the slot holding a trigram, or the empty slot where it belongs
+    private int slotOf(long gram) {
+        int mask = grams.length - 1;
+        long h = gram * 0x9E3779B97F4A7C15L;
+        int slot = (int) (h ^ (h >>> 32)) & mask;
+        while (grams[slot] != EMPTY && grams[slot] != gram) {
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+
+    private void initTable(int capacity) {
+        grams = new long[capacity];
+        Arrays.fill(grams, EMPTY);
+        postings = new int[capacity][];
+        postingSizes = new int[capacity];
+        numGrams = 0;
+    }
+
+    private void growTable() {
+        long[] oldGrams = grams;
+        int[][] oldPostings = postings;
+        int[] oldSizes = postingSizes;
+        int count = numGrams;
+
+        initTable(oldGrams.length * 2);
+        numGrams = count;
+        for (int i = 0; i < oldGrams.length; i++) {
+            if (oldGrams[i] != EMPTY) {
+                int slot = slotOf(oldGrams[i]);
+                grams[slot] = oldGrams[i];
+                postings[slot] = oldPostings[i];
+                postingSizes[slot] = oldSizes[i];
+            }
+        }
+    }
+
+    // index the live documents again, under new ids
+    private void rebuild() {
+        ArrayList<StockItem> items = new ArrayList<>(live);
+        for (int id = 0; id < limit; id++) {
+            if (docs[id] != null) {
+                items.add(docs[id]);
+            }
+        }
+        clear();
+        for (StockItem item : items) {
+            add(item);
+        }
+    }
+
+    // A title and its similarity to the query; orders worse matches first.
+    private static class Match implements Comparable<Match> {
+        final StockItem item;
+        final double similarity;
+
+        Match(StockItem item, double similarity) {
+            this.item = item;
+            this.similarity = similarity;
+        }
+
+        public int compareTo(Match other) {
+            int c = Double.compare(similarity, other.similarity);
+            // of two equally similar titles, the later one is worse
+            return c != 0 ? c : other.item.compareTo(item);
+        }
+    }
+}
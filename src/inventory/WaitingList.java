@@ -1,14 +1,40 @@
 package inventory;
 
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
 import java.io.Serializable;
-import list.ListReferenceBased;
+import java.util.Arrays;
+import java.util.ConcurrentModificationException;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import list.ListException;
+import list.ListInterface;
 
-public class WaitingList extends ListReferenceBased implements Serializable {
+// Waiting list for a title, kept in a growable circular array so that
+// people are added at the end and removed from the front in O(1).
+public class WaitingList implements ListInterface, Serializable {
+
+    private static final int DEFAULT_CAPACITY = 4;
 
     private String title;
+    private int numItems; // number of items in list
+
+    // the list occupies items[front], items[front+1], ... (wrapping
+    // around the end of the array); only the items are serialized
+    private transient Object[] items;
+    private transient int front;
+
+    // number of structural modifications, checked by iterators
+    private transient int modCount;
 
     public WaitingList(String title) {
         this.title = title;
+        items = new Object[DEFAULT_CAPACITY];
+        front = 0;
+        numItems = 0;
     }
 
     // get the title associted the waiting list
@@ -23,11 +49,174 @@ public class WaitingList extends ListReferenceBased implements Serializable {
 
     // add an item at the end of the list
     public void addLast(Object item) {
-        add(size()+1, item);
+        if (numItems == items.length) {
+            grow();
+        }
+        items[slot(numItems)] = item;
+        numItems++;
+        modCount++;
     }
 
     // remove the first item at the beginning of the list
     public void removeFirst() {
-        remove(1);
+        if (numItems == 0) {
+            throw new ListException("List index out of bounds exception " +
+                    "on remove: 1");
+        }
+        items[front] = null;
+        front = slot(1);
+        numItems--;
+        modCount++;
+    }
+
+    // remove up to n items from the beginning of the list and return
+    // them in order (fewer than n if the list is shorter)
+    public Object[] drain(int n) {
+        int count = Math.max(0, Math.min(n, numItems));
+        Object[] drained = new Object[count];
+
+        // copy at most two runs: up to the end of the array, then from 0
+        int firstRun = Math.min(count, items.length - front);
+        System.arraycopy(items, front, drained, 0, firstRun);
+        Arrays.fill(items, front, front + firstRun, null);
+        if (count > firstRun) {
+            System.arraycopy(items, 0, drained, firstRun, count - firstRun);
+            Arrays.fill(items, 0, count - firstRun, null);
+        }
+        front = slot(count);
+        numItems -= count;
+        if (count > 0) {
+            modCount++;
+        }
+        return drained;
+    }
+
+    public boolean isEmpty() {
+        return numItems == 0;
+    }
+
+    public int size() {
+        return numItems;
+    }
+
+    public void add(int index, Object item) throws ListException {
+        if (index >= 1 && index <= numItems+1) {
+            if (numItems == items.length) {
+                grow();
+            }
+            // shift the items at index .. numItems back one place
+            for (int i = numItems; i >= index; i--) {
+                items[slot(i)] = items[slot(i-1)];
+            }
+            items[slot(index-1)] = item;
+            numItems++;
+            modCount++;
+        } else {
+            throw new ListException("List index out of bounds exception " +
+                    "on add: " + index);
+        }
+    }
+
+    public Object get(int index) throws ListException {
+        if (index >= 1 && index <= numItems) {
+            return items[slot(index-1)];
+        } else {
+            throw new ListException("List index out of bounds exception " +
+                    "on get: " + index);
+        }
+    }
+
+    public void remove(int index) throws ListException {
+        if (index >= 1 && index <= numItems) {
+            if (index == 1) {
+                removeFirst();
+                return;
+            }
+            // shift the items after index forward one place
+            for (int i = index; i < numItems; i++) {
+                items[slot(i-1)] = items[slot(i)];
+            }
+            items[slot(numItems-1)] = null;
+            numItems--;
+            modCount++;
+        } else {
+            throw new ListException("List index out of bounds exception " +
+                    "on remove: " + index);
+        }
+    }
+
+    public void removeAll() {
+        items = new Object[DEFAULT_CAPACITY];
+        front = 0;
+        numItems = 0;
+        modCount++;
+    }
+
+    public Iterator<Object> iterator() {
+        return new RingIterator();
+    }
+
+    public Spliterator<Object> spliterator() {
+        return Spliterators.spliterator(iterator(), numItems,
+                Spliterator.ORDERED);
+    }
+
+    public Object[] toArray() {
+        Object[] copy = new Object[numItems];
+        int firstRun = Math.min(numItems, items.length - front);
+        System.arraycopy(items, front, copy, 0, firstRun);
+        System.arraycopy(items, 0, copy, firstRun, numItems - firstRun);
+        return copy;
+    }
+
+    // array slot of the item at 0-based offset i from the front
+    private int slot(int i) {
+        int s = front + i;
+        return s < items.length ? s : s - items.length;
+    }
+
+    // double the array, unwrapping the items to start at slot 0
+    private void grow() {
+        Object[] newItems = toArray();
+        items = new Object[Math.max(DEFAULT_CAPACITY, items.length * 2)];
+        System.arraycopy(newItems, 0, items, 0, numItems);
+        front = 0;
+    }
+
+    private void writeObject(ObjectOutputStream out) throws IOException {
+        out.defaultWriteObject();
+        for (int i = 0; i < numItems; i++) {
+            out.writeObject(items[slot(i)]);
+        }
+    }
+
+    private void readObject(ObjectInputStream in)
+            throws IOException, ClassNotFoundException {
+        in.defaultReadObject();
+        items = new Object[Math.max(numItems, DEFAULT_CAPACITY)];
+        front = 0;
+        for (int i = 0; i < numItems; i++) {
+            items[i] = in.readObject();
+        }
+    }
+
+    // Fail-fast iterator from the front of the list to the end.
+    private class RingIterator implements Iterator<Object> {
+        private int next = 0;
+        private int expectedModCount = modCount;
+
+        public boolean hasNext() {
+            return next < numItems;
+        }
+
+        public Object next() {
+            if (modCount != expectedModCount) {
+                throw new ConcurrentModificationException();
+            }
+            if (next >= numItems) {
+                throw new NoSuchElementException();
+            }
+            return items[slot(next++)];
+        }
     }
 }
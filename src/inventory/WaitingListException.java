@@ -0,0 +1,24 @@
+package inventory;
+
+import java.io.IOException;
+
+/**
+ * Thrown by StockItem.getWaitingList, and so by the inventory operations
+ * that use a waiting list, when a lazily restored list cannot be read from
+ * its data file. The item is left as it was, so a later call tries to
+ * read the list again.
+ */
+public class WaitingListException extends RuntimeException {
+
+    // constructor; see StockItem.readWaitingList
+    WaitingListException(String title, IOException cause) {
+        super("The waiting list for \"" + title + "\" could not be read: " +
+              cause, cause);
+    }
+
+    // get the error that kept the list from being read
+    @Override
+    public IOException getCause() {
+        return (IOException) super.getCause();
+    }
+}
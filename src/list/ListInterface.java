@@ -1,10 +1,16 @@
 package list;
 
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.Spliterator;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
 //////////////////////////////////////////
 //Interface ListInterface for the ADT list
 //////////////////////////////////////////
 
-public interface ListInterface {
+public interface ListInterface extends Iterable<Object> {
 
     public boolean isEmpty();
     // Determines whether a list is empty.
@@ -40,4 +46,39 @@ public interface ListInterface {
     // Precondition: None.
     // Postcondition: The list is empty.
 
+    public Iterator<Object> iterator();
+    // Returns an iterator over the items of the list.
+    // Precondition: None.
+    // Postcondition: The iterator visits the items in position order, one
+    // pass over the list. It is fail-fast: if the list is added to or
+    // removed from while iterating, a ConcurrentModificationException is
+    // thrown.
+
+    public Spliterator<Object> spliterator();
+    // Returns a spliterator over the items of the list.
+    // Precondition: None.
+    // Postcondition: The spliterator is ordered, sized and fail-fast, and
+    // can be split for use by a parallel stream.
+
+    public Object[] toArray();
+    // Copies the items of the list into an array.
+    // Precondition: None.
+    // Postcondition: Returns a new array holding the items in position
+    // order. Later changes to the list do not affect the array.
+
+    public default Stream<Object> stream() {
+        return StreamSupport.stream(spliterator(), false);
+    }
+    // Returns a sequential stream over the items of the list.
+    // Precondition: None.
+    // Postcondition: The stream visits the items in position order.
+
+    public default Stream<Object> parallelStream() {
+        return Arrays.stream(toArray()).parallel();
+    }
+    // Returns a parallel stream over a snapshot of the list.
+    // Precondition: None.
+    // Postcondition: The stream runs over a copy taken by toArray(), so the
+    // list may be modified while the stream is being processed.
+
 }
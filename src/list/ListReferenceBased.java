@@ -1,5 +1,14 @@
 package list;
+import java.io.IOException;
+import java.io.ObjectInputStream;
 import java.io.Serializable;
+import java.util.ConcurrentModificationException;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.function.Consumer;
+import metrics.Metrics;
 
 /////////////////////////////////////////////
 // Reference-based implementation of ADT list
@@ -11,6 +20,18 @@ public class ListReferenceBased implements ListInterface, Serializable {
     private Node head;
     private int numItems; // number of items in list
 
+    // reference to the last node, so appends do not walk the list
+    private transient Node tail;
+
+    // last node located by find() and its position; lets sequential
+    // get(i) loops continue from where the previous call stopped. The two
+    // are published together, so concurrent readers never pair a node
+    // with the wrong position.
+    private transient Cursor cursor;
+
+    // number of structural modifications, checked by iterators
+    private transient int modCount;
+
     public ListReferenceBased() {
         numItems = 0;
         head = null;
@@ -27,16 +48,34 @@ public class ListReferenceBased implements ListInterface, Serializable {
     // --------------------------------------------------
     // Locates a specified node in a linked list.
     // Precondition: index is the number of the desired
-    // node. Assumes that 1 <= index <= numItems+1
+    // node. Assumes that 1 <= index <= numItems
     // Postcondition: Returns a reference to the desired
-    // node.
+    // node. The cursor is left on that node, so a later
+    // call with the same or a larger index resumes from
+    // there instead of from head.
     // --------------------------------------------------
     private Node find(int index) {
+        if (index == numItems) {
+            return tail;
+        }
+
         Node curr = head;
+        int skip = 1;
+        Cursor last = cursor;
 
-        for (int skip = 1; skip < index; skip++) {
+        if (last != null && last.index <= index) {
+            curr = last.node;
+            skip = last.index;
+        }
+        if (Metrics.ENABLED) {
+            Metrics.LIST_NODES_TRAVERSED.add(index - skip);
+        }
+        for (; skip < index; skip++) {
             curr = curr.getNext();
         }
+        if (last == null || last.index != index) {
+            cursor = new Cursor(curr, index);
+        }
         return curr;
     }
 
@@ -60,14 +99,28 @@ public class ListReferenceBased implements ListInterface, Serializable {
                 // beginning of list
                 Node newNode = new Node(item, head);
                 head = newNode;
+                if (tail == null) {
+                    tail = newNode;
+                }
+                // every node after the new head moved back one position
+                Cursor last = cursor;
+                if (last != null) {
+                    cursor = new Cursor(last.node, last.index + 1);
+                }
             } else {
+                // find() leaves the cursor on prev, whose position is
+                // not affected by the insertion
                 Node prev = find(index-1);
                 // insert the new node containing item after
                 // the node that prev references
                 Node newNode = new Node(item, prev.getNext());
                 prev.setNext(newNode);
+                if (prev == tail) {
+                    tail = newNode;
+                }
             }
             numItems++;
+            modCount++;
         } else {
             throw new ListException("List index out of bounds exception " +
                     "on add: " + index);
@@ -78,15 +131,27 @@ public class ListReferenceBased implements ListInterface, Serializable {
         if (index >= 1 && index <= numItems) {
             if (index == 1) {
                 // delete the first node from the list
+                Cursor last = cursor;
+                if (last != null) {
+                    cursor = (last.node == head) ? null
+                            : new Cursor(last.node, last.index - 1);
+                }
                 head = head.getNext();
+                if (head == null) {
+                    tail = null;
+                }
             } else {
                 Node prev = find(index-1);
                 // delete the node after the node that prev
                 // references, save reference to node
                 Node curr = prev.getNext();
                 prev.setNext(curr.getNext());
+                if (curr == tail) {
+                    tail = prev;
+                }
             }
             numItems--;
+            modCount++;
         } else {
             throw new ListException("List index out of bounds exception " +
                     "on remove: " + index);
@@ -98,6 +163,166 @@ public class ListReferenceBased implements ListInterface, Serializable {
         // unreachable and thus marked for garbage
         // collection
         head = null;
+        tail = null;
+        cursor = null;
         numItems = 0;
+        modCount++;
+    }
+
+    public Iterator<Object> iterator() {
+        return new NodeIterator(head);
+    }
+
+    // iterator that starts at position index (1 <= index <= size()+1);
+    // reaching the start node costs O(index), or less when the cursor
+    // is already before it
+    public Iterator<Object> iterator(int index) throws ListException {
+        if (index >= 1 && index <= numItems+1) {
+            return new NodeIterator(index <= numItems ? find(index) : null);
+        } else {
+            throw new ListException("List index out of bounds exception " +
+                    "on iterator: " + index);
+        }
+    }
+
+    public Spliterator<Object> spliterator() {
+        return new NodeSpliterator(head, numItems, modCount);
+    }
+
+    public Object[] toArray() {
+        Object[] items = new Object[numItems];
+        int i = 0;
+        for (Node curr = head; curr != null; curr = curr.getNext()) {
+            items[i++] = curr.getItem();
+        }
+        return items;
+    }
+
+    // A node and its position in the list.
+    private static final class Cursor {
+        final Node node;
+        final int index;
+
+        Cursor(Node node, int index) {
+            this.node = node;
+            this.index = index;
+        }
+    }
+
+    // Fail-fast iterator that follows the node chain from a given node.
+    private class NodeIterator implements Iterator<Object> {
+        private Node next;
+        private int expectedModCount = modCount;
+
+        NodeIterator(Node first) {
+            next = first;
+        }
+
+        public boolean hasNext() {
+            return next != null;
+        }
+
+        public Object next() {
+            if (modCount != expectedModCount) {
+                throw new ConcurrentModificationException();
+            }
+            if (next == null) {
+                throw new NoSuchElementException();
+            }
+            Object dataItem = next.getItem();
+            next = next.getNext();
+            return dataItem;
+        }
+    }
+
+    // Spliterator over a run of nodes. Splitting copies the next batch of
+    // items into an array, which is the only way to hand out part of a
+    // singly linked list without walking it twice.
+    private class NodeSpliterator implements Spliterator<Object> {
+        private static final int BATCH_UNIT = 1 << 10;
+        private static final int MAX_BATCH = 1 << 25;
+
+        private Node current;
+        private int remaining;
+        private int batch;
+        private final int expectedModCount;
+
+        NodeSpliterator(Node first, int remaining, int expectedModCount) {
+            this.current = first;
+            this.remaining = remaining;
+            this.expectedModCount = expectedModCount;
+        }
+
+        public boolean tryAdvance(Consumer<? super Object> action) {
+            if (action == null) {
+                throw new NullPointerException();
+            }
+            if (remaining <= 0 || current == null) {
+                return false;
+            }
+            Object dataItem = current.getItem();
+            current = current.getNext();
+            remaining--;
+            action.accept(dataItem);
+            if (modCount != expectedModCount) {
+                throw new ConcurrentModificationException();
+            }
+            return true;
+        }
+
+        public void forEachRemaining(Consumer<? super Object> action) {
+            if (action == null) {
+                throw new NullPointerException();
+            }
+            Node curr = current;
+            int n = remaining;
+            current = null;
+            remaining = 0;
+            while (n-- > 0 && curr != null) {
+                Object dataItem = curr.getItem();
+                curr = curr.getNext();
+                action.accept(dataItem);
+            }
+            if (modCount != expectedModCount) {
+                throw new ConcurrentModificationException();
+            }
+        }
+
+        public Spliterator<Object> trySplit() {
+            if (remaining <= 1 || current == null) {
+                return null;
+            }
+            int n = Math.min(Math.min(batch + BATCH_UNIT, MAX_BATCH), remaining);
+            Object[] items = new Object[n];
+            int j = 0;
+            while (j < n && current != null) {
+                items[j++] = current.getItem();
+                current = current.getNext();
+            }
+            batch = j;
+            remaining -= j;
+            if (modCount != expectedModCount) {
+                throw new ConcurrentModificationException();
+            }
+            return Spliterators.spliterator(items, 0, j, characteristics());
+        }
+
+        public long estimateSize() {
+            return remaining;
+        }
+
+        public int characteristics() {
+            return Spliterator.ORDERED | Spliterator.SIZED | Spliterator.SUBSIZED;
+        }
+    }
+
+    // tail and cursor are not serialized; rebuild tail after reading
+    private void readObject(ObjectInputStream in)
+            throws IOException, ClassNotFoundException {
+        in.defaultReadObject();
+        tail = head;
+        while (tail != null && tail.getNext() != null) {
+            tail = tail.getNext();
+        }
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,21 @@
+package metrics;
+
+/**
+ * JMX view of the operation counters in Metrics, registered as
+ * inventory:type=Counters.
+ */
+public interface CountersMXBean {
+
+    // comparisons made by the sorted lists locating an item (locateIndex,
+    // and the searches in sortedAdd and sortedRemove)
+    long getLocateIndexComparisons();
+
+    // nodes followed by find in ListReferenceBased
+    long getListNodesTraversed();
+
+    // bytes written to data files by saveInventory
+    long getSnapshotBytesWritten();
+
+    // set every counter back to zero
+    void reset();
+}
@@ -0,0 +1,131 @@
+package metrics;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A histogram of latencies in nanoseconds, bucketed the way HdrHistogram
+ * does it: values below 32 get a bucket each, and every larger power of
+ * two is split into 16 equal buckets. Any recorded value is therefore
+ * known to within 1/16 (about 6%), from 1 ns up to Long.MAX_VALUE, in a
+ * fixed table of 960 counts. Recording is lock-free and allocates
+ * nothing, so many threads can record into one histogram.
+ *
+ * Percentiles are reported as the highest value of the bucket they fall
+ * in, never above the largest value recorded.
+ */
+public class LatencyHistogram implements LatencyHistogramMXBean {
+
+    private static final int SUB_BUCKETS = 16;
+    private static final int LINEAR = 2 * SUB_BUCKETS; // values 0 .. 31
+    private static final int BUCKETS = LINEAR + (63 - 5) * SUB_BUCKETS;
+
+    private final String name;
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+    private final LongAdder count = new LongAdder();
+    private final LongAdder total = new LongAdder();
+    private final LongAccumulator max = new LongAccumulator(Math::max, 0);
+
+    // constructor; see Metrics.histogram
+    LatencyHistogram(String name) {
+        this.name = name;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    // record one latency; negative values count as zero
+    public void record(long nanos) {
+        long value = Math.max(nanos, 0);
+        counts.incrementAndGet(bucketOf(value));
+        count.increment();
+        total.add(value);
+        max.accumulate(value);
+    }
+
+    // record the time elapsed since startNanos, a System.nanoTime() value
+    public void recordSince(long startNanos) {
+        record(System.nanoTime() - startNanos);
+    }
+
+    public long getCount() {
+        return count.sum();
+    }
+
+    // the smallest bucket value that at least p percent of the recorded
+    // latencies do not exceed; 0 if nothing was recorded
+    public long percentile(double p) {
+        long n = count.sum();
+        if (n == 0) {
+            return 0;
+        }
+        long rank = Math.max(1, (long) Math.ceil(n * p / 100));
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += counts.get(i);
+            if (seen >= rank) {
+                return Math.min(highestValueOf(i), max.get());
+            }
+        }
+        return max.get();
+    }
+
+    public long getMaxNanos() {
+        return max.get();
+    }
+
+    public double getMeanMicros() {
+        long n = count.sum();
+        return n == 0 ? 0 : total.sum() / 1000.0 / n;
+    }
+
+    public double getP50Micros() {
+        return percentile(50) / 1000.0;
+    }
+
+    public double getP99Micros() {
+        return percentile(99) / 1000.0;
+    }
+
+    public double getMaxMicros() {
+        return max.get() / 1000.0;
+    }
+
+    public void reset() {
+        for (int i = 0; i < BUCKETS; i++) {
+            counts.set(i, 0);
+        }
+        count.reset();
+        total.reset();
+        max.reset();
+    }
+
+    // values 0 .. 31 map to themselves; a value with its highest bit at
+    // position m >= 5 maps to one of the 16 buckets of [2^m, 2^(m+1))
+    static int bucketOf(long value) {
+        if (value < LINEAR) {
+            return (int) value;
+        }
+        int m = 63 - Long.numberOfLeadingZeros(value);
+        int shift = m - 4;
+        int top = (int) (value >>> shift); // 16 .. 31
+        return LINEAR + (m - 5) * SUB_BUCKETS + (top - SUB_BUCKETS);
+    }
+
+    // the largest value that maps to bucket i; Long.MAX_VALUE for the
+    // last buckets, whose upper bound does not fit in a long
+    static long highestValueOf(int i) {
+        if (i < LINEAR) {
+            return i;
+        }
+        int m = (i - LINEAR) / SUB_BUCKETS + 5;
+        int shift = m - 4;
+        long top = (i - LINEAR) % SUB_BUCKETS + SUB_BUCKETS;
+        if (shift >= Long.numberOfLeadingZeros(top + 1)) {
+            return Long.MAX_VALUE;
+        }
+        return ((top + 1) << shift) - 1;
+    }
+}
@@ -0,0 +1,24 @@
+package metrics;
+
+/**
+ * JMX view of a LatencyHistogram, registered by Metrics as
+ * inventory:type=Latency,name=&lt;histogram name&gt;.
+ */
+public interface LatencyHistogramMXBean {
+
+    String getName();
+
+    // number of latencies recorded
+    long getCount();
+
+    double getMeanMicros();
+
+    double getP50Micros();
+
+    double getP99Micros();
+
+    double getMaxMicros();
+
+    // forget everything recorded so far
+    void reset();
+}
@@ -0,0 +1,129 @@
+package metrics;
+
+import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.LongAdder;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * Operation counters and latency histograms for the inventory, turned on
+ * with the system property inventory.metrics=true.
+ *
+ * ENABLED is read once, when this class is loaded. Every place that
+ * records something tests it first, so with metrics off the JIT removes
+ * the recording code altogether and the only cost left is the test
+ * itself, which is folded into a constant. With metrics on, the counters
+ * and histograms are lock-free and are also registered as MXBeans under
+ * the domain "inventory", where jconsole and other JMX clients can read
+ * them.
+ */
+public final class Metrics {
+
+    public static final boolean ENABLED = Boolean.getBoolean("inventory.metrics");
+
+    // comparisons made by the sorted lists locating an item (locateIndex,
+    // and the searches in sortedAdd and sortedRemove)
+    public static final LongAdder LOCATE_INDEX_COMPARISONS = new LongAdder();
+
+    // nodes followed by find in ListReferenceBased
+    public static final LongAdder LIST_NODES_TRAVERSED = new LongAdder();
+
+    // bytes written to data files by saveInventory
+    public static final LongAdder SNAPSHOT_BYTES_WRITTEN = new LongAdder();
+
+    // histograms by name, kept sorted for the report
+    private static final ConcurrentSkipListMap<String, LatencyHistogram> histograms =
+            new ConcurrentSkipListMap<>();
+
+    private static final String DOMAIN = "inventory";
+
+    static {
+        if (ENABLED) {
+            register(new Counters(), DOMAIN + ":type=Counters");
+        }
+    }
+
+    private Metrics() {}
+
+    // the histogram with a given name, created (and registered with JMX)
+    // on first use
+    public static LatencyHistogram histogram(String name) {
+        LatencyHistogram histogram = histograms.get(name);
+        if (histogram == null) {
+            LatencyHistogram newHistogram = new LatencyHistogram(name);
+            histogram = histograms.putIfAbsent(name, newHistogram);
+            if (histogram == null) {
+                histogram = newHistogram;
+                if (ENABLED) {
+                    register(histogram, DOMAIN + ":type=Latency,name=" +
+                                        ObjectName.quote(name));
+                }
+            }
+        }
+        return histogram;
+    }
+
+    // print the histograms that have recorded something, and the counters
+    public static void report(PrintStream out) {
+        out.println();
+        out.println("                             ==========");
+        out.println("                             Statistics");
+        out.println("                             ==========");
+        if (!ENABLED) {
+            out.println("-- Statistics are off. Start the program with " +
+                        "-Dinventory.metrics=true to collect them.");
+            return;
+        }
+        out.println("---------------------------------------------------------------------");
+        out.printf("%-28s %9s %10s %10s %10s%n", "Latency (microseconds)",
+                   "count", "p50", "p99", "max");
+        for (LatencyHistogram histogram : histograms.values()) {
+            long count = histogram.getCount();
+            if (count == 0) continue;
+            out.printf("%-28s %9d %10.1f %10.1f %10.1f%n", histogram.getName(),
+                       count, histogram.getP50Micros(), histogram.getP99Micros(),
+                       histogram.getMaxMicros());
+        }
+        out.println("---------------------------------------------------------------------");
+        out.printf("%-28s %20d%n", "locateIndex comparisons",
+                   LOCATE_INDEX_COMPARISONS.sum());
+        out.printf("%-28s %20d%n", "list nodes traversed",
+                   LIST_NODES_TRAVERSED.sum());
+        out.printf("%-28s %20d%n", "snapshot bytes written",
+                   SNAPSHOT_BYTES_WRITTEN.sum());
+        out.println("---------------------------------------------------------------------");
+    }
+
+    private static void register(Object mbean, String name) {
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            server.registerMBean(mbean, new ObjectName(name));
+        } catch (JMException e) {
+            System.out.println(e);
+        }
+    }
+
+    // the counters above, as seen through JMX
+    private static class Counters implements CountersMXBean {
+        public long getLocateIndexComparisons() {
+            return LOCATE_INDEX_COMPARISONS.sum();
+        }
+
+        public long getListNodesTraversed() {
+            return LIST_NODES_TRAVERSED.sum();
+        }
+
+        public long getSnapshotBytesWritten() {
+            return SNAPSHOT_BYTES_WRITTEN.sum();
+        }
+
+        public void reset() {
+            LOCATE_INDEX_COMPARISONS.reset();
+            LIST_NODES_TRAVERSED.reset();
+            SNAPSHOT_BYTES_WRITTEN.reset();
+        }
+    }
+}
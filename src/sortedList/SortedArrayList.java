@@ -0,0 +1,273 @@
+package sortedList;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.util.ConcurrentModificationException;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.function.Consumer;
+import list.*;
+import metrics.Metrics;
+
+////////////////////////////////////////////////////////
+// Array-based implementation of ADT sorted list.
+// Items are kept in one contiguous array, so get is O(1)
+// and locateIndex is a binary search. Insertions and
+// deletions shift the tail of the array, which makes
+// this the choice for lists that are read far more
+// often than they are changed.
+////////////////////////////////////////////////////////
+
+public class SortedArrayList implements SortedListInterface, Serializable {
+
+    private static final int DEFAULT_CAPACITY = 16;
+
+    private int numItems; // number of items in list
+
+    // items[0 .. numItems-1] hold the list in sorted order; only that
+    // part of the array is serialized (see writeObject)
+    private transient Object[] items;
+
+    // number of structural modifications, checked by iterators
+    private transient int modCount;
+
+    // constructor
+    public SortedArrayList() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    // constructor: reserves room for initialCapacity items
+    public SortedArrayList(int initialCapacity) {
+        if (initialCapacity < 1) {
+            initialCapacity = 1;
+        }
+        items = new Object[initialCapacity];
+        numItems = 0;
+    }
+
+    public boolean isEmpty() {
+        return numItems == 0;
+    }
+
+    public int size() {
+        return numItems;
+    }
+
+    public Object get(int index) throws ListException {
+        if (index >= 1 && index <= numItems) {
+            return items[index - 1];
+        } else {
+            throw new ListException("List index out of bounds exception " +
+                    "on get: " + index);
+        }
+    }
+
+    public void sortedAdd(Comparable newItem) {
+        int newPosition = locateIndex(newItem);
+
+        if (numItems == items.length) {
+            grow();
+        }
+        System.arraycopy(items, newPosition - 1, items, newPosition,
+                         numItems - newPosition + 1);
+        items[newPosition - 1] = newItem;
+        numItems++;
+        modCount++;
+    }
+
+    public void sortedAppend(Comparable newItem) {
+        if (numItems > 0 && newItem.compareTo(items[numItems - 1]) < 0) {
+            throw new ListException("Sorted append out of order");
+        }
+        if (numItems == items.length) {
+            grow();
+        }
+        items[numItems++] = newItem;
+        modCount++;
+    }
+
+    public void sortedRemove(Comparable anItem) {
+        int position = locateIndex(anItem);
+
+        if (position <= numItems && anItem.compareTo(items[position - 1]) == 0) {
+            System.arraycopy(items, position, items, position - 1,
+                             numItems - position);
+            items[--numItems] = null;
+            modCount++;
+        } else {
+            throw new ListException("Sorted remove failed");
+        }
+    }
+
+    public int locateIndex(Comparable anItem) {
+        int low = 0;
+        int high = numItems;
+        int comparisons = 0;
+
+        // loop invariant: anItem belongs after items[0 .. low-1] and
+        // before or at items[high]
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            comparisons++;
+            if (anItem.compareTo(items[mid]) > 0) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        if (Metrics.ENABLED) {
+            Metrics.LOCATE_INDEX_COMPARISONS.add(comparisons);
+        }
+        return low + 1;
+    }
+
+    // grow the array by half its size, so n insertions copy O(n) items
+    private void grow() {
+        int newCapacity = items.length + (items.length >> 1) + 1;
+        Object[] newItems = new Object[newCapacity];
+        System.arraycopy(items, 0, newItems, 0, numItems);
+        items = newItems;
+    }
+
+    public void removeAll() {
+        items = new Object[DEFAULT_CAPACITY];
+        numItems = 0;
+        modCount++;
+    }
+
+    // restrictive inheritance
+    public void add(int index, Object item) {
+        throw new ListException("Unsupported operation add on a sorted list");
+    }
+
+    // restrictive inheritance
+    public void remove(int index) {
+        throw new ListException("Unsupported operation remove on a sorted list");
+    }
+
+    public Iterator<Object> iterator() {
+        return new ArrayIterator(0);
+    }
+
+    public Iterator<Object> iterator(int index) throws ListException {
+        if (index >= 1 && index <= numItems + 1) {
+            return new ArrayIterator(index - 1);
+        } else {
+            throw new ListException("List index out of bounds exception " +
+                    "on iterator: " + index);
+        }
+    }
+
+    public Spliterator<Object> spliterator() {
+        return new ArraySpliterator(0, numItems, modCount);
+    }
+
+    public Object[] toArray() {
+        Object[] copy = new Object[numItems];
+        System.arraycopy(items, 0, copy, 0, numItems);
+        return copy;
+    }
+
+    private void writeObject(ObjectOutputStream out) throws IOException {
+        out.defaultWriteObject();
+        for (int i = 0; i < numItems; i++) {
+            out.writeObject(items[i]);
+        }
+    }
+
+    private void readObject(ObjectInputStream in)
+            throws IOException, ClassNotFoundException {
+        in.defaultReadObject();
+        items = new Object[Math.max(numItems, DEFAULT_CAPACITY)];
+        for (int i = 0; i < numItems; i++) {
+            items[i] = in.readObject();
+        }
+    }
+
+    // Fail-fast iterator over the occupied part of the array, starting
+    // at items[next].
+    private class ArrayIterator implements Iterator<Object> {
+        private int next;
+        private int expectedModCount = modCount;
+
+        ArrayIterator(int first) {
+            next = first;
+        }
+
+        public boolean hasNext() {
+            return next < numItems;
+        }
+
+        public Object next() {
+            if (modCount != expectedModCount) {
+                throw new ConcurrentModificationException();
+            }
+            if (next >= numItems) {
+                throw new NoSuchElementException();
+            }
+            return items[next++];
+        }
+    }
+
+    // Spliterator over items[origin .. fence-1]; splits in halves.
+    private class ArraySpliterator implements Spliterator<Object> {
+        private int origin;
+        private final int fence;
+        private final int expectedModCount;
+
+        ArraySpliterator(int origin, int fence, int expectedModCount) {
+            this.origin = origin;
+            this.fence = fence;
+            this.expectedModCount = expectedModCount;
+        }
+
+        public boolean tryAdvance(Consumer<? super Object> action) {
+            if (action == null) {
+                throw new NullPointerException();
+            }
+            if (origin >= fence) {
+                return false;
+            }
+            if (modCount != expectedModCount) {
+                throw new ConcurrentModificationException();
+            }
+            action.accept(items[origin++]);
+            return true;
+        }
+
+        public void forEachRemaining(Consumer<? super Object> action) {
+            if (action == null) {
+                throw new NullPointerException();
+            }
+            Object[] a = items;
+            for (int i = origin; i < fence; i++) {
+                action.accept(a[i]);
+            }
+            origin = fence;
+            if (modCount != expectedModCount) {
+                throw new ConcurrentModificationException();
+            }
+        }
+
+        public Spliterator<Object> trySplit() {
+            int mid = (origin + fence) >>> 1;
+            if (mid <= origin) {
+                return null;
+            }
+            Spliterator<Object> prefix =
+                    new ArraySpliterator(origin, mid, expectedModCount);
+            origin = mid;
+            return prefix;
+        }
+
+        public long estimateSize() {
+            return fence - origin;
+        }
+
+        public int characteristics() {
+            return Spliterator.ORDERED | Spliterator.SIZED | Spliterator.SUBSIZED;
+        }
+    }
+}
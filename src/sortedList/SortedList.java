@@ -1,6 +1,7 @@
 package sortedList;
 import java.io.Serializable;
 import list.*;
+import metrics.Metrics;
 
 public class SortedList extends ListReferenceBased
                         implements SortedListInterface, Serializable {
@@ -15,6 +16,16 @@ public class SortedList extends ListReferenceBased
         super.add(newPosition, newItem);
     }
 
+    public void sortedAppend(Comparable newItem) {
+        int len = size();
+
+        // the last node is kept by the superclass, so this is O(1)
+        if (len > 0 && newItem.compareTo(get(len)) < 0) {
+            throw new ListException("Sorted append out of order");
+        }
+        super.add(len + 1, newItem);
+    }
+
     public void sortedRemove(Comparable anItem) {
         int position = locateIndex(anItem);
 
@@ -35,6 +46,10 @@ public class SortedList extends ListReferenceBased
                (anItem.compareTo(get(index)) > 0)) {
             ++index;
         }
+        if (Metrics.ENABLED) {
+            // one comparison per item passed, and one that stopped the loop
+            Metrics.LOCATE_INDEX_COMPARISONS.add(index <= len ? index : len);
+        }
         return index;
     }
 
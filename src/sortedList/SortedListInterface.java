@@ -1,4 +1,5 @@
 package sortedList;
+import java.util.Iterator;
 import list.*;
 
 public interface SortedListInterface extends ListInterface {
@@ -8,6 +9,13 @@ public interface SortedListInterface extends ListInterface {
     // Precondition: None.
     // Postcondition: The item is added to the list in sorted order.
 
+    public void sortedAppend(Comparable newItem) throws ListException;
+    // Adds an item at the end of the list.
+    // Precondition: newItem is not less than the last item in the list.
+    // Postcondition: The item is the last item in the list. Lets a list be
+    // rebuilt from already sorted data without searching for each position.
+    // Throws ListException if newItem is less than the last item.
+
     public void sortedRemove(Comparable anItem);
     // Removes an item from the list.
     // Precondition: None.
@@ -21,4 +29,12 @@ public interface SortedListInterface extends ListInterface {
     // index position in the list is returned.  If the
     // item is not in the list, the index of where it
     // belongs in the list is returned.
+
+    public Iterator<Object> iterator(int index) throws ListException;
+    // Returns an iterator that starts at a given position.
+    // Precondition: 1 <= index <= size()+1.
+    // Postcondition: The iterator visits the items at positions index,
+    // index+1, ... in order, and is fail-fast like iterator(). With
+    // locateIndex, this reads a run of items without visiting the items
+    // before it. Throws ListException if index is out of bounds.
 }
@@ -0,0 +1,353 @@
+package sortedList;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.util.ConcurrentModificationException;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.ThreadLocalRandom;
+import list.*;
+import metrics.Metrics;
+
+//////////////////////////////////////////////////////////
+// Indexable skip list implementation of ADT sorted list.
+// Every forward link records how many positions it skips,
+// so locateIndex, get, sortedAdd and sortedRemove all run
+// in expected O(log n) time.
+//////////////////////////////////////////////////////////
+
+public class SortedSkipList implements SortedListInterface, Serializable {
+
+    // a node is promoted to the next level with probability 1/4,
+    // which is enough levels for about 4^16 items
+    private static final int MAX_LEVEL = 16;
+
+    private int numItems; // number of items in list
+
+    // the list itself is written item by item (see writeObject)
+    private transient SkipNode header;
+    private transient int level; // number of levels in use
+
+    // number of structural modifications, checked by iterators
+    private transient int modCount;
+
+    // last node on each level and its position, kept between calls to
+    // sortedAppend; valid only while fingerModCount == modCount
+    private transient SkipNode[] finger;
+    private transient int[] fingerPos;
+    private transient int fingerModCount;
+
+    // constructor
+    public SortedSkipList() {
+        numItems = 0;
+        header = new SkipNode(null, MAX_LEVEL);
+        level = 1;
+        header.width[0] = 1;
+    }
+
+    public boolean isEmpty() {
+        return numItems == 0;
+    }
+
+    public int size() {
+        return numItems;
+    }
+
+    public Object get(int index) throws ListException {
+        if (index >= 1 && index <= numItems) {
+            return nodeAt(index).item;
+        } else {
+            throw new ListException("List index out of bounds exception " +
+                    "on get: " + index);
+        }
+    }
+
+    // the node at position index (0 for the header), found by walking
+    // down the levels in O(log n)
+    private SkipNode nodeAt(int index) {
+        SkipNode curr = header;
+        int pos = 0;
+
+        // loop invariant: curr is the node at position pos
+        for (int i = level - 1; i >= 0; i--) {
+            while (curr.next[i] != null && pos + curr.width[i] <= index) {
+                pos += curr.width[i];
+                curr = curr.next[i];
+            }
+        }
+        return curr;
+    }
+
+    public void sortedAdd(Comparable newItem) {
+        SkipNode[] update = new SkipNode[MAX_LEVEL];
+        int[] rank = new int[MAX_LEVEL];
+        int pos = search(newItem, update, rank);
+
+        int newLevel = randomLevel();
+        if (newLevel > level) {
+            for (int i = level; i < newLevel; i++) {
+                update[i] = header;
+                rank[i] = 0;
+                header.width[i] = numItems + 1;
+            }
+            level = newLevel;
+        }
+
+        // the new node goes at position pos+1; links that jump over it
+        // get one position longer
+        SkipNode newNode = new SkipNode(newItem, newLevel);
+        for (int i = 0; i < newLevel; i++) {
+            newNode.next[i] = update[i].next[i];
+            update[i].next[i] = newNode;
+            newNode.width[i] = update[i].width[i] - (pos - rank[i]);
+            update[i].width[i] = pos - rank[i] + 1;
+        }
+        for (int i = newLevel; i < level; i++) {
+            update[i].width[i]++;
+        }
+        numItems++;
+        modCount++;
+    }
+
+    public void sortedAppend(Comparable newItem) {
+        if (finger == null || fingerModCount != modCount) {
+            findLast();
+        }
+        if (numItems > 0 && newItem.compareTo(finger[0].item) < 0) {
+            throw new ListException("Sorted append out of order");
+        }
+
+        int pos = numItems + 1;
+        int newLevel = randomLevel();
+        if (newLevel > level) {
+            for (int i = level; i < newLevel; i++) {
+                finger[i] = header;
+                fingerPos[i] = 0;
+            }
+            level = newLevel;
+        }
+
+        // link the new node after the last node on each of its levels;
+        // higher links that end the list now reach one position further
+        SkipNode newNode = new SkipNode(newItem, newLevel);
+        for (int i = 0; i < newLevel; i++) {
+            finger[i].next[i] = newNode;
+            finger[i].width[i] = pos - fingerPos[i];
+            newNode.width[i] = 1;
+            finger[i] = newNode;
+            fingerPos[i] = pos;
+        }
+        for (int i = newLevel; i < level; i++) {
+            finger[i].width[i]++;
+        }
+        numItems++;
+        modCount++;
+        fingerModCount = modCount;
+    }
+
+    // walk to the last node on every level, starting each level where
+    // the level above ended
+    private void findLast() {
+        if (finger == null) {
+            finger = new SkipNode[MAX_LEVEL];
+            fingerPos = new int[MAX_LEVEL];
+        }
+        SkipNode curr = header;
+        int pos = 0;
+
+        for (int i = level - 1; i >= 0; i--) {
+            while (curr.next[i] != null) {
+                pos += curr.width[i];
+                curr = curr.next[i];
+            }
+            finger[i] = curr;
+            fingerPos[i] = pos;
+        }
+        fingerModCount = modCount;
+    }
+
+    public void sortedRemove(Comparable anItem) {
+        SkipNode[] update = new SkipNode[MAX_LEVEL];
+        search(anItem, update, new int[MAX_LEVEL]);
+
+        SkipNode target = update[0].next[0];
+        if (target == null || anItem.compareTo(target.item) != 0) {
+            throw new ListException("Sorted remove failed");
+        }
+
+        for (int i = 0; i < level; i++) {
+            if (update[i].next[i] == target) {
+                update[i].width[i] += target.width[i] - 1;
+                update[i].next[i] = target.next[i];
+            } else {
+                update[i].width[i]--;
+            }
+        }
+        while (level > 1 && header.next[level - 1] == null) {
+            level--;
+        }
+        numItems--;
+        modCount++;
+    }
+
+    public int locateIndex(Comparable anItem) {
+        return search(anItem, null, null) + 1;
+    }
+
+    // --------------------------------------------------
+    // Walks down the levels to the last node whose item
+    // is less than anItem.
+    // Precondition: update and rank are either both null
+    // or arrays of length MAX_LEVEL.
+    // Postcondition: Returns the number of items less
+    // than anItem. If update is given, update[i] holds
+    // the last node on level i before anItem's position
+    // and rank[i] holds that node's position.
+    // --------------------------------------------------
+    private int search(Comparable anItem, SkipNode[] update, int[] rank) {
+        SkipNode curr = header;
+        int pos = 0;
+        int comparisons = 0;
+
+        for (int i = level - 1; i >= 0; i--) {
+            while (curr.next[i] != null &&
+                   anItem.compareTo(curr.next[i].item) > 0) {
+                pos += curr.width[i];
+                curr = curr.next[i];
+                comparisons++;
+            }
+            if (curr.next[i] != null) {
+                comparisons++; // the comparison that ended the level
+            }
+            if (update != null) {
+                update[i] = curr;
+                rank[i] = pos;
+            }
+        }
+        if (Metrics.ENABLED) {
+            Metrics.LOCATE_INDEX_COMPARISONS.add(comparisons);
+        }
+        return pos;
+    }
+
+    private static int randomLevel() {
+        int bits = ThreadLocalRandom.current().nextInt();
+        int newLevel = 1 + Integer.numberOfTrailingZeros(bits | (1 << 30)) / 2;
+        return Math.min(newLevel, MAX_LEVEL);
+    }
+
+    public void removeAll() {
+        header = new SkipNode(null, MAX_LEVEL);
+        level = 1;
+        header.width[0] = 1;
+        numItems = 0;
+        modCount++;
+    }
+
+    // restrictive inheritance
+    public void add(int index, Object item) {
+        throw new ListException("Unsupported operation add on a sorted list");
+    }
+
+    // restrictive inheritance
+    public void remove(int index) {
+        throw new ListException("Unsupported operation remove on a sorted list");
+    }
+
+    public Iterator<Object> iterator() {
+        return new SkipIterator(header.next[0]);
+    }
+
+    // iterator that starts at position index; finding the start node
+    // takes O(log n), each step after it O(1)
+    public Iterator<Object> iterator(int index) throws ListException {
+        if (index >= 1 && index <= numItems + 1) {
+            return new SkipIterator(nodeAt(index - 1).next[0]);
+        } else {
+            throw new ListException("List index out of bounds exception " +
+                    "on iterator: " + index);
+        }
+    }
+
+    public Spliterator<Object> spliterator() {
+        return Spliterators.spliterator(iterator(), numItems,
+                Spliterator.ORDERED);
+    }
+
+    public Object[] toArray() {
+        Object[] items = new Object[numItems];
+        int i = 0;
+        for (SkipNode curr = header.next[0]; curr != null; curr = curr.next[0]) {
+            items[i++] = curr.item;
+        }
+        return items;
+    }
+
+    // write the items in order instead of the node graph, which would
+    // recurse once per node
+    private void writeObject(ObjectOutputStream out) throws IOException {
+        out.defaultWriteObject();
+        for (SkipNode curr = header.next[0]; curr != null; curr = curr.next[0]) {
+            out.writeObject(curr.item);
+        }
+    }
+
+    // the items arrive in sorted order, so the list is rebuilt with
+    // sortedAppend in linear time
+    private void readObject(ObjectInputStream in)
+            throws IOException, ClassNotFoundException {
+        in.defaultReadObject();
+        int count = numItems;
+        numItems = 0;
+        header = new SkipNode(null, MAX_LEVEL);
+        level = 1;
+        header.width[0] = 1;
+        for (int i = 0; i < count; i++) {
+            sortedAppend((Comparable) in.readObject());
+        }
+    }
+
+    // Fail-fast iterator along the bottom level of the list, starting
+    // at a given node.
+    private class SkipIterator implements Iterator<Object> {
+        private SkipNode next;
+        private int expectedModCount = modCount;
+
+        SkipIterator(SkipNode first) {
+            next = first;
+        }
+
+        public boolean hasNext() {
+            return next != null;
+        }
+
+        public Object next() {
+            if (modCount != expectedModCount) {
+                throw new ConcurrentModificationException();
+            }
+            if (next == null) {
+                throw new NoSuchElementException();
+            }
+            Object dataItem = next.item;
+            next = next.next[0];
+            return dataItem;
+        }
+    }
+
+    // A skip list node. width[i] is the number of positions between this
+    // node and next[i]; a link to null reaches position numItems+1.
+    private static class SkipNode {
+        final Comparable item;
+        final SkipNode[] next;
+        final int[] width;
+
+        SkipNode(Comparable item, int nodeLevel) {
+            this.item = item;
+            this.next = new SkipNode[nodeLevel];
+            this.width = new int[nodeLevel];
+        }
+    }
+}